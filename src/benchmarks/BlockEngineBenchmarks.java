@@ -0,0 +1,63 @@
+package benchmarks;
+
+import chip8.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+///The block engine on a register heavy loop, interpreting its blocks or running them compiled to classes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BlockEngineBenchmarks {
+    private static final int INSTRUCTIONS = 1000;
+
+    //Counter, carry, xor, shift and subtract on V0 to V3 in a loop, every 8 frame cycles cut it somewhere else
+    private static final int[] LOOP = new int[]{
+            0x6000, 0x6100, 0x6200, 0x6300,
+            0x7001, 0x8104, 0x8203, 0x8206, 0x8314, 0x8325, 0x7301, 0x1208 };
+
+    @Param({ "-1", "0" })
+    public int compileThreshold;
+
+    private Registers registers;
+    private BlockEngine blockEngine;
+
+    @Setup
+    public void setup()
+    {
+        Memory memory = new Memory();
+        registers = new Registers();
+        CPU cpu = new CPU(memory, registers, InputSource.NONE);
+        blockEngine = new BlockEngine(cpu, memory, registers);
+        blockEngine.setCompileThreshold(compileThreshold);
+
+        short address = Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+        for(int opcode : LOOP)
+        {
+            memory.setMemoryAtAddress(address, (byte)(opcode >> 8));
+            memory.setMemoryAtAddress((short)(address + 1), (byte) opcode);
+            address += 2;
+        }
+    }
+
+    ///Frames of 8 instructions like Machine cuts them at 500Hz, INSTRUCTIONS per operation
+    @Benchmark
+    public byte runFrames() throws Exception
+    {
+        for(int retired = 0; retired < INSTRUCTIONS; retired += 8) { blockEngine.run(8); }
+
+        return registers.getVAtAddress(0x3);
+    }
+
+    @Benchmark
+    public byte runUncut() throws Exception
+    {
+        blockEngine.run(INSTRUCTIONS);
+
+        return registers.getVAtAddress(0x3);
+    }
+}
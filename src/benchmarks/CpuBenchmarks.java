@@ -0,0 +1,121 @@
+package benchmarks;
+
+import chip8.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+///Single instructions through the reference interpreter path, fetch, increment and decode, from a fixed PC
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CpuBenchmarks {
+    private static final short PC = Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+    private static final short I = 0x300;
+
+    public abstract static class Cpu {
+        final Memory memory = new Memory();
+        final Registers registers = new Registers();
+        final CPU cpu = new CPU(memory, registers, InputSource.NONE);
+        void load(short address, int opcode)
+        {
+            memory.setMemoryAtAddress(address, (byte)(opcode >> 8));
+            memory.setMemoryAtAddress((short)(address + 1), (byte) opcode);
+
+            registers.setVAtAddress(0x0, (byte) 0x12);
+            registers.setVAtAddress(0x1, (byte) 0x34);
+        }
+
+        void runInstruction() throws Exception
+        {
+            cpu.fetchOpcode();
+            cpu.incrementPC();
+            cpu.decodeAndRunOpcode();
+        }
+    }
+
+    //One per opcode family plus CLS, run from PC with V0 = 0x12, V1 = 0x34 and I = 0x300
+    @State(Scope.Thread)
+    public static class Instruction extends Cpu {
+        @Param({ "1200", "3012", "5010", "6012", "7001", "8014", "8016", "9010", "A300", "B200", "C0FF",
+                "E09E", "F007", "F01E", "F029", "F033", "FF55", "FF65", "00E0" })
+        public String opcode;
+
+        @Setup
+        public void setup() { load(PC, Integer.parseInt(opcode, 16)); }
+    }
+
+    @State(Scope.Thread)
+    public static class CallReturn extends Cpu {
+        @Setup
+        public void setup()
+        {
+            load(PC, 0x2204);
+            load((short)(PC + 4), 0x00EE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Fetch extends Cpu {
+        int offset;
+
+        @Setup
+        public void setup() { load(PC, 0x6012); }
+    }
+
+    //8x15 sprite from the bottom of memory, fully on screen at 8,8 and wrapping around both edges at 60,28
+    @State(Scope.Thread)
+    public static class Draw extends Cpu {
+        @Param({ "8", "60" })
+        public int x;
+
+        @Setup
+        public void setup()
+        {
+            load(PC, 0xD01F);
+            registers.setVAtAddress(0x0, (byte) x);
+            registers.setVAtAddress(0x1, (byte)(x == 8 ? 8 : 28));
+        }
+    }
+
+    @Benchmark
+    public void decodeAndRunOpcode(Instruction state, Blackhole blackhole) throws Exception
+    {
+        state.registers.setPC(PC);
+        state.registers.setI(I);
+        state.runInstruction();
+        blackhole.consume(state.registers.getPC());
+        blackhole.consume(state.registers.getVAtAddress(0x0));
+    }
+
+    @Benchmark
+    public short callAndReturn(CallReturn state) throws Exception
+    {
+        state.registers.setPC(PC);
+        state.runInstruction();
+        state.runInstruction();
+        return state.registers.getPC();
+    }
+
+    @Benchmark
+    public short fetchOpcode(Fetch state)
+    {
+        //Walks the first page of the program so the load can't be hoisted
+        state.offset = (state.offset + 2) & 0xFE;
+        state.registers.setPC((short)(PC + state.offset));
+        state.cpu.fetchOpcode();
+        return state.cpu.getCurrentOpcode();
+    }
+
+    @Benchmark
+    public byte draw(Draw state) throws Exception
+    {
+        state.registers.setPC(PC);
+        state.registers.setI((short) 0x000);
+        state.runInstruction();
+        return state.registers.getVAtAddress(0xF);
+    }
+}
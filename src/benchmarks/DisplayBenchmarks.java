@@ -0,0 +1,62 @@
+package benchmarks;
+
+import chip8.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DisplayBenchmarks {
+    private Memory memory;
+    private Display display;
+    private BufferedImage target;
+    private Graphics2D graphics;
+    private int row;
+
+    @Setup
+    public void setup()
+    {
+        memory = new Memory();
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++)
+        {
+            memory.setScreenRow(y, y % 2 == 0 ? 0xAAAAAAAAAAAAAAAAL : 0x5555555555555555L);
+        }
+
+        display = new Display(memory);
+        display.start();
+        display.paintScreen();
+
+        //Offscreen target the size of the window's display area
+        target = new BufferedImage(Utils.SCREEN_WIDTH * Utils.SCREEN_SCALE, Utils.SCREEN_HEIGHT * Utils.SCREEN_SCALE, BufferedImage.TYPE_INT_RGB);
+        graphics = target.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException
+    {
+        graphics.dispose();
+        display.close();
+    }
+
+    @Benchmark
+    public int paintComponent()
+    {
+        display.paintComponent(graphics);
+        return target.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public void paintScreen()
+    {
+        row = (row + 1) & (Utils.SCREEN_HEIGHT - 1);
+        memory.xorScreenRow(row, 1L);
+        display.paintScreen();
+    }
+}
@@ -0,0 +1,311 @@
+package benchmarks;
+
+import chip8.*;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+///Runs every rom under Utils.ROMS_PATH uncapped for a fixed number of instructions, one after the other on this thread,
+///and compares emulated MIPS and allocation against a stored JSON baseline.
+///Usage: MacroBenchmark [--instructions N] [--baseline file] [--threshold fraction] [--save-baseline]
+///                      [--no-recompiler] [--interpret-blocks]
+///The last two leave tiers out, to see what each one brings.
+///A rom that throws is reported as failed and the others still run.
+///Exits with status 1 when a rom regressed by more than the threshold or failed.
+public class MacroBenchmark {
+    private static final int DEFAULT_INSTRUCTIONS = 2_000_000;
+    private static final double DEFAULT_THRESHOLD = 0.10;
+    private static final int REPETITIONS = 5;
+    private static final String DEFAULT_BASELINE = "benchmarks/macro-baseline.json";
+    //Below this, allocation differences are noise from the counters themselves
+    private static final double ALLOCATION_SLACK = 1024;
+
+    private static final Pattern ROM_ENTRY = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"\\s*:\\s*\\{([^}]*)}");
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*([-+0-9.eE]+)");
+
+    public static class Result {
+        private final double mips;
+        private final double allocatedBytesPerMillion;
+        private final long gcPauseMillis;
+        private final Exception error;
+
+        public Result(double mips, double allocatedBytesPerMillion, long gcPauseMillis)
+        {
+            this.mips = mips;
+            this.allocatedBytesPerMillion = allocatedBytesPerMillion;
+            this.gcPauseMillis = gcPauseMillis;
+            this.error = null;
+        }
+
+        ///A rom that threw before it could be measured
+        public Result(Exception error)
+        {
+            this.mips = 0;
+            this.allocatedBytesPerMillion = 0;
+            this.gcPauseMillis = 0;
+            this.error = error;
+        }
+
+        public double getMips() { return mips; }
+        public double getAllocatedBytesPerMillion() { return allocatedBytesPerMillion; }
+        public long getGcPauseMillis() { return gcPauseMillis; }
+        ///What the rom threw, null if it was measured
+        public Exception getError() { return error; }
+    }
+
+    private int instructions = DEFAULT_INSTRUCTIONS;
+    private double threshold = DEFAULT_THRESHOLD;
+    private boolean recompiling = true;
+    private boolean compilingBlocks = true;
+
+    public void setInstructions(int value) { instructions = value; }
+    public void setThreshold(double value) { threshold = value; }
+    public void setRecompiling(boolean value) { recompiling = value; }
+    public void setCompilingBlocks(boolean value) { compilingBlocks = value; }
+
+    public Result run(Path rom) throws Exception
+    {
+        Machine machine = new Machine(InputSource.NONE);
+        machine.getCpu().setRandomSeed(0);
+        //Measure the tiers the emulator runs with
+        if(recompiling) { machine.setRecompilerCache(Paths.get(Utils.RECOMPILER_CACHE_PATH)); }
+        if(!compilingBlocks) { machine.getBlockEngine().setCompileThreshold(BlockEngine.NEVER_COMPILE); }
+        machine.loadRom(Files.readAllBytes(rom));
+
+        //Warm up the JIT and the block caches on the rom itself
+        machine.runCycles(instructions);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        double[] mips = new double[REPETITIONS];
+        long executed = 0;
+
+        long gcBefore = getCollectionMillis();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+
+        for(int repetition = 0; repetition < REPETITIONS; repetition++)
+        {
+            long start = System.nanoTime();
+            int retired = machine.runCycles(instructions);
+            mips[repetition] = retired * 1e3 / (System.nanoTime() - start);
+            executed += retired;
+        }
+
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        long gcPause = getCollectionMillis() - gcBefore;
+
+        //The median keeps one JIT recompilation or scheduler hiccup from flagging a regression
+        Arrays.sort(mips);
+        return new Result(mips[REPETITIONS / 2], allocated * 1e6 / executed, gcPause);
+    }
+
+    public Map<String, Result> runAll(Path root) throws Exception
+    {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for(Path rom : BatchRunner.findRoms(root))
+        {
+            Result result;
+            try
+            {
+                result = run(rom);
+            }
+            catch(Exception e)
+            {
+                //One broken rom shouldn't cost the measurements of all the others
+                result = new Result(e);
+            }
+            results.put(root.relativize(rom).toString(), result);
+        }
+
+        return results;
+    }
+
+    ///Regressions against the baseline, per rom and for the corpus as a whole. Roms missing from either side are skipped,
+    ///except that a rom that failed always is a regression
+    public List<String> findRegressions(Map<String, Result> results, Map<String, Result> baseline)
+    {
+        List<String> regressions = new ArrayList<>();
+        double currentLogSum = 0;
+        double previousLogSum = 0;
+        int compared = 0;
+
+        for(Map.Entry<String, Result> entry : results.entrySet())
+        {
+            Result current = entry.getValue();
+            if(current.getError() != null)
+            {
+                regressions.add(String.format("%s: failed, %s", entry.getKey(), current.getError()));
+                continue;
+            }
+
+            Result previous = baseline.get(entry.getKey());
+            if(previous == null) { continue; }
+
+            currentLogSum += Math.log(current.getMips());
+            previousLogSum += Math.log(previous.getMips());
+            compared++;
+
+            if(current.getMips() < previous.getMips() * (1 - threshold))
+            {
+                regressions.add(String.format("%s: %.2f MIPS, was %.2f", entry.getKey(), current.getMips(), previous.getMips()));
+            }
+            if(current.getAllocatedBytesPerMillion() > previous.getAllocatedBytesPerMillion() * (1 + threshold) + ALLOCATION_SLACK)
+            {
+                regressions.add(String.format("%s: %.0f B/Minstr, was %.0f", entry.getKey(), current.getAllocatedBytesPerMillion(), previous.getAllocatedBytesPerMillion()));
+            }
+        }
+
+        //Single roms are noisy on a busy machine, the whole corpus much less so
+        if(compared > 0 && currentLogSum < previousLogSum + compared * Math.log(1 - threshold))
+        {
+            regressions.add(String.format("corpus: %.2f MIPS geometric mean, was %.2f", Math.exp(currentLogSum / compared), Math.exp(previousLogSum / compared)));
+        }
+
+        return regressions;
+    }
+
+    private static long getCollectionMillis()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+
+        return total;
+    }
+
+    //region JSON
+
+    ///Failed roms are left out, there is nothing to compare against
+    public static String toJson(Map<String, Result> results, int instructions)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"instructions\": ").append(instructions).append(",\n  \"roms\": {\n");
+
+        int remaining = 0;
+        for(Result result : results.values()) { if(result.getError() == null) { remaining++; } }
+        for(Map.Entry<String, Result> entry : results.entrySet())
+        {
+            Result result = entry.getValue();
+            if(result.getError() != null) { continue; }
+
+            json.append("    \"").append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\": {")
+                    .append(String.format(Locale.ROOT, "\"mips\": %.3f, \"allocatedBytesPerMillion\": %.1f, \"gcPauseMillis\": %d",
+                            result.getMips(), result.getAllocatedBytesPerMillion(), result.getGcPauseMillis()))
+                    .append(--remaining > 0 ? "},\n" : "}\n");
+        }
+
+        return json.append("  }\n}\n").toString();
+    }
+
+    ///Reads back what toJson writes, not a general JSON parser
+    public static Map<String, Result> fromJson(String json)
+    {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        Matcher rom = ROM_ENTRY.matcher(json);
+        while(rom.find())
+        {
+            Map<String, String> fields = new LinkedHashMap<>();
+            Matcher field = FIELD.matcher(rom.group(2));
+            while(field.find()) { fields.put(field.group(1), field.group(2)); }
+
+            String name = rom.group(1).replace("\\\"", "\"").replace("\\\\", "\\");
+            results.put(name, new Result(
+                    Double.parseDouble(fields.getOrDefault("mips", "0")),
+                    Double.parseDouble(fields.getOrDefault("allocatedBytesPerMillion", "0")),
+                    Long.parseLong(fields.getOrDefault("gcPauseMillis", "0"))));
+        }
+
+        return results;
+    }
+
+    //endregion
+
+    public static void printTable(Map<String, Result> results, PrintStream out)
+    {
+        int nameWidth = 3;
+        for(String name : results.keySet()) { nameWidth = Math.max(nameWidth, name.length()); }
+
+        String format = "%-" + nameWidth + "s  %10s  %14s  %8s%n";
+        out.printf(format, "ROM", "MIPS", "B/MINSTR", "GC MS");
+
+        double logSum = 0;
+        int measured = 0;
+        for(Map.Entry<String, Result> entry : results.entrySet())
+        {
+            Result result = entry.getValue();
+            if(result.getError() != null)
+            {
+                out.printf("%-" + nameWidth + "s  FAILED %s%n", entry.getKey(), result.getError());
+                continue;
+            }
+
+            out.printf(format, entry.getKey(), String.format("%.2f", result.getMips()),
+                    String.format("%.0f", result.getAllocatedBytesPerMillion()), result.getGcPauseMillis());
+            logSum += Math.log(result.getMips());
+            measured++;
+        }
+
+        out.printf("Geometric mean %.2f MIPS over %d roms%n", Math.exp(logSum / measured), measured);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        MacroBenchmark benchmark = new MacroBenchmark();
+        Path baselinePath = Paths.get(DEFAULT_BASELINE);
+        boolean saveBaseline = false;
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--instructions": benchmark.setInstructions(Integer.parseInt(args[++i])); break;
+                case "--baseline": baselinePath = Paths.get(args[++i]); break;
+                case "--threshold": benchmark.setThreshold(Double.parseDouble(args[++i])); break;
+                case "--save-baseline": saveBaseline = true; break;
+                case "--no-recompiler": benchmark.setRecompiling(false); break;
+                case "--interpret-blocks": benchmark.setCompilingBlocks(false); break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        Map<String, Result> results = benchmark.runAll(Paths.get(Utils.ROMS_PATH));
+        printTable(results, System.out);
+
+        if(saveBaseline)
+        {
+            if(baselinePath.getParent() != null) { Files.createDirectories(baselinePath.getParent()); }
+            Files.write(baselinePath, toJson(results, benchmark.instructions).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Saved baseline to " + baselinePath);
+            return;
+        }
+
+        if(!Files.exists(baselinePath))
+        {
+            System.out.println("No baseline at " + baselinePath + ", run with --save-baseline to create one");
+            return;
+        }
+
+        List<String> regressions = benchmark.findRegressions(results, fromJson(new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8)));
+        for(String regression : regressions) { System.out.println("REGRESSION " + regression); }
+
+        if(!regressions.isEmpty()) { System.exit(1); }
+        System.out.println("No regressions against " + baselinePath);
+    }
+}
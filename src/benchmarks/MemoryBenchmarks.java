@@ -0,0 +1,47 @@
+package benchmarks;
+
+import chip8.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MemoryBenchmarks {
+    private static final int MASK = Utils.MEMORY_SIZE - 1;
+
+    private final Memory memory = new Memory();
+    //Every write also goes through the CPU's instruction cache listener
+    private final Memory listenedMemory = new Memory();
+    private int address;
+    private int row;
+
+    @Setup
+    public void setup() { new CPU(listenedMemory, new Registers(), InputSource.NONE); }
+
+    private short nextAddress()
+    {
+        address = (address + 1) & MASK;
+        return (short) address;
+    }
+
+    @Benchmark
+    public byte getMemoryAtAddress() { return memory.getMemoryAtAddress(nextAddress()); }
+
+    @Benchmark
+    public void setMemoryAtAddress() { memory.setMemoryAtAddress(nextAddress(), (byte) address); }
+
+    @Benchmark
+    public void setMemoryAtAddressWithInstructionCache() { listenedMemory.setMemoryAtAddress(nextAddress(), (byte) address); }
+
+    @Benchmark
+    public boolean xorScreenRow()
+    {
+        row = (row + 1) & 31;
+        return memory.xorScreenRow(row & (Utils.SCREEN_HEIGHT - 1), 0xF0F0L << row);
+    }
+}
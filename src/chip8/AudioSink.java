@@ -0,0 +1,15 @@
+package chip8;
+
+///Plays the buzzer while the sound timer is running
+public interface AudioSink {
+    AudioSink NONE = new AudioSink() {
+        @Override
+        public void playSound() {}
+
+        @Override
+        public void stopSound() {}
+    };
+
+    void playSound();
+    void stopSound();
+}
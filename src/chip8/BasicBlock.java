@@ -0,0 +1,35 @@
+package chip8;
+
+///Straight-line run of instructions starting at a given address.
+///Only the terminator (jump, call, return or skip) reads or changes the PC, so the body can run without touching it.
+public class BasicBlock {
+    final short startAddress;
+    final DecodedInstruction[] body;
+    final short[] bodyAddresses;
+    final DecodedInstruction terminator; //Null when the block stops before a jump, the next block picks up from there
+    final short terminatorAddress;
+    final short endAddress; //Last byte covered by the block
+
+    boolean valid = true;
+    int runs;
+    CompiledBlock compiled; //Null until the block ran often enough to be worth a class
+
+    BasicBlock(short startAddress, DecodedInstruction[] body, short[] bodyAddresses, DecodedInstruction terminator, short terminatorAddress, short endAddress)
+    {
+        this.startAddress = startAddress;
+        this.body = body;
+        this.bodyAddresses = bodyAddresses;
+        this.terminator = terminator;
+        this.terminatorAddress = terminatorAddress;
+        this.endAddress = endAddress;
+    }
+
+    public short getStartAddress() { return startAddress; }
+    public short getEndAddress() { return endAddress; }
+    public boolean isValid() { return valid; }
+
+    public boolean covers(int address)
+    {
+        return address >= startAddress && address <= endAddress;
+    }
+}
@@ -0,0 +1,218 @@
+package chip8;
+
+import exceptions.UnknownOpcodeException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+///Runs every rom under Utils.ROMS_PATH headless, one per fork-join worker, and prints a result table.
+///Usage: BatchRunner [--frames N] [--threads N] [--seed N] [--output file] [--profile report]
+///With --profile every rom runs through the profiler and their summed counts are written to the report,
+///the opcode mix of the whole corpus.
+public class BatchRunner {
+    private static final int DEFAULT_FRAMES = 600;
+
+    private int frames = DEFAULT_FRAMES;
+    private long seed;
+    private boolean profiling;
+    private final Profiler profile = new Profiler();   /* Totals over every rom run so far */
+
+    public static class Result {
+        private final String rom;
+        private final long screenHash;
+        private final long instructions;
+        private final int frames;
+        private final boolean halted;
+        private final long wallNanoseconds;
+        private final Exception error;
+
+        Result(String rom, long screenHash, long instructions, int frames, boolean halted, long wallNanoseconds, Exception error)
+        {
+            this.rom = rom;
+            this.screenHash = screenHash;
+            this.instructions = instructions;
+            this.frames = frames;
+            this.halted = halted;
+            this.wallNanoseconds = wallNanoseconds;
+            this.error = error;
+        }
+
+        public String getRom() { return rom; }
+        public long getScreenHash() { return screenHash; }
+        public long getInstructions() { return instructions; }
+        public int getFrames() { return frames; }
+        public boolean isHalted() { return halted; }
+        public long getWallNanoseconds() { return wallNanoseconds; }
+        public Exception getError() { return error; }
+
+        public String getStatus()
+        {
+            if(error instanceof UnknownOpcodeException) { return "unknown opcode"; }
+            if(error != null) { return "error"; }
+            return halted ? "halted" : "ok";
+        }
+    }
+
+    public void setFrames(int value) { frames = value; }
+    public void setSeed(long value) { seed = value; }
+    public void setProfiling(boolean value) { profiling = value; }
+    public Profiler getProfile() { return profile; }
+
+    ///Every .ch8 file under the roms folder, sorted so tables from two runs line up
+    public static List<Path> findRoms(Path root) throws IOException
+    {
+        try(Stream<Path> files = Files.walk(root))
+        {
+            return files.filter(path -> path.toString().endsWith(".ch8")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    ///Runs a single rom for the configured number of frames, or until it jumps to itself
+    public Result run(Path root, Path rom)
+    {
+        String name = root.relativize(rom).toString();
+        long start = System.nanoTime();
+
+        Machine machine = new Machine(InputSource.NONE);
+        machine.getCpu().setRandomSeed(seed);
+        machine.getProfiler().setEnabled(profiling);
+
+        int frame = 0;
+        boolean halted = false;
+        Exception error = null;
+
+        try
+        {
+            machine.loadRom(Files.readAllBytes(rom));
+
+            while(frame < frames && !halted)
+            {
+                machine.runFrame();
+                frame++;
+                halted = machine.isHalted();
+            }
+        }
+        catch(Exception e)
+        {
+            error = e;
+        }
+
+        if(profiling)
+        {
+            synchronized(profile) { profile.add(machine.getProfiler()); }
+        }
+
+        return new Result(name, machine.getMemory().hashScreen(), machine.getCycleCount(), frame, halted, System.nanoTime() - start, error);
+    }
+
+    public List<Result> runAll(Path root, int threads) throws IOException, InterruptedException
+    {
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for(Path rom : findRoms(root))
+        {
+            tasks.add(() -> run(root, rom));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            List<Result> results = new ArrayList<>();
+            for(Future<Result> future : pool.invokeAll(tasks))
+            {
+                results.add(future.get());
+            }
+
+            return results;
+        }
+        catch(ExecutionException e)
+        {
+            //run() catches everything a rom can throw, this is a bug in the runner itself
+            throw new IllegalStateException(e.getCause());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    public static void printTable(List<Result> results, PrintStream out)
+    {
+        int nameWidth = 3;
+        for(Result result : results) { nameWidth = Math.max(nameWidth, result.getRom().length()); }
+
+        String format = "%-" + nameWidth + "s  %-14s  %16s  %12s  %6s  %9s  %s%n";
+        out.printf(format, "ROM", "STATUS", "SCREEN HASH", "INSTRUCTIONS", "FRAMES", "WALL MS", "ERROR");
+
+        long totalInstructions = 0;
+        long totalNanoseconds = 0;
+        for(Result result : results)
+        {
+            out.printf(format, result.getRom(), result.getStatus(), String.format("%016X", result.getScreenHash()),
+                    result.getInstructions(), result.getFrames(), String.format("%.1f", result.getWallNanoseconds() / 1e6),
+                    result.getError() == null ? "" : result.getError().toString());
+
+            totalInstructions += result.getInstructions();
+            totalNanoseconds += result.getWallNanoseconds();
+        }
+
+        out.printf("%d roms, %d instructions, %.1f ms of emulation%n", results.size(), totalInstructions, totalNanoseconds / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        BatchRunner runner = new BatchRunner();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path output = null;
+        Path profilePath = null;
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--frames": runner.setFrames(Integer.parseInt(args[++i])); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--seed": runner.setSeed(Long.parseLong(args[++i])); break;
+                case "--output": output = Paths.get(args[++i]); break;
+                case "--profile":
+                    profilePath = Paths.get(args[++i]);
+                    runner.setProfiling(true);
+                    break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = runner.runAll(Paths.get(Utils.ROMS_PATH), threads);
+
+        if(output == null)
+        {
+            printTable(results, System.out);
+        }
+        else
+        {
+            try(PrintStream out = new PrintStream(Files.newOutputStream(output)))
+            {
+                printTable(results, out);
+            }
+        }
+
+        System.out.printf("Ran %d roms on %d threads in %.1f s%n", results.size(), threads, (System.nanoTime() - start) / 1e9);
+
+        if(profilePath != null)
+        {
+            runner.getProfile().dump(profilePath);
+            System.out.println("Wrote the corpus profile to " + profilePath);
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package chip8;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+///Turns a basic block into a hidden class running it as straight line bytecode, one class per block.
+///The V registers the block uses are read into locals once and only written back before a CPU handler runs and at every exit,
+///so HotSpot can keep them in machine registers for the whole block. ALU, timer and I instructions, jumps and skips are
+///inlined, CLS, DRW, RND, BCD, FX55, FX65, calls, returns and key instructions call the CPU handlers with constant operands.
+///The PC is set past an instruction before its handler runs, where the interpreter has it, so when a handler throws
+///the PC tells BlockEngine which instruction of the block failed.
+final class BlockCompiler {
+    private static final Logger LOGGER = Logger.getLogger(BlockCompiler.class.getName());
+
+    private static final String CPU_NAME = Type.getInternalName(CPU.class);
+    private static final String REGISTERS_NAME = Type.getInternalName(Registers.class);
+    private static final String BLOCK_NAME = Type.getInternalName(BasicBlock.class);
+    private static final String RUN_DESCRIPTOR = "(L" + CPU_NAME + ";L" + REGISTERS_NAME + ";L" + BLOCK_NAME + ";I)I";
+
+    //Locals of the generated run method
+    private static final int CPU_LOCAL = 1;
+    private static final int REGISTERS_LOCAL = 2;
+    private static final int BLOCK_LOCAL = 3;
+    private static final int BUDGET_LOCAL = 4;
+    private static final int V_LOCAL = 5;
+    private static final int FIRST_REGISTER_LOCAL = 6; /* V0 to VF, byte values sign extended like the array holds them */
+    private static final int RESULT_LOCAL = FIRST_REGISTER_LOCAL + 16;
+    private static final int FLAG_LOCAL = RESULT_LOCAL + 1;
+
+    private final MethodVisitor method;
+    //Where each register is at this point of the straight line code
+    private final boolean[] loaded = new boolean[16];
+    private final boolean[] dirty = new boolean[16];
+
+    private BlockCompiler(MethodVisitor method)
+    {
+        this.method = method;
+    }
+
+    ///Returns the block compiled to a class, or null if it couldn't be, the block is then left to the interpreter
+    static CompiledBlock compile(BasicBlock block)
+    {
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(generate(block), true);
+            return (CompiledBlock) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | RuntimeException | ClassFormatError | VerifyError e)
+        {
+            LOGGER.warning(String.format("Could not compile block 0x%03X: %s", block.startAddress, e));
+            return null;
+        }
+    }
+
+    static byte[] generate(BasicBlock block)
+    {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, String.format("chip8/CompiledBlock_%03X", block.startAddress),
+                null, "java/lang/Object", new String[]{ Type.getInternalName(CompiledBlock.class) });
+
+        MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor run = writer.visitMethod(ACC_PUBLIC, "run", RUN_DESCRIPTOR, null, null);
+        run.visitCode();
+        new BlockCompiler(run).emitBlock(block);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void emitBlock(BasicBlock block)
+    {
+        method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+        method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "getV", "()[B", false);
+        method.visitVarInsn(ASTORE, V_LOCAL);
+
+        int retired = 0;
+        short lastOpcode = 0;
+        for(int i = 0; i < block.body.length; i++)
+        {
+            DecodedInstruction instruction = block.body[i];
+            short next = (short)(block.bodyAddresses[i] + 0x2 * instruction.length);
+
+            exitUnlessBudget(retired + instruction.length, retired, block.bodyAddresses[i], lastOpcode);
+            emitBody(instruction, next);
+            retired += instruction.length;
+            lastOpcode = instruction.opcode;
+
+            //FX33 and FX55 may have rewritten the block, what's left of it is stale
+            if(instruction.kind == DecodedInstruction.BCD || instruction.kind == DecodedInstruction.STORE_REGISTERS)
+            {
+                Label valid = new Label();
+                method.visitVarInsn(ALOAD, BLOCK_LOCAL);
+                method.visitFieldInsn(GETFIELD, BLOCK_NAME, "valid", "Z");
+                method.visitJumpInsn(IFNE, valid);
+                emitExit(retired, next, lastOpcode);
+                method.visitLabel(valid);
+            }
+        }
+
+        DecodedInstruction terminator = block.terminator;
+        if(terminator == null)
+        {
+            emitExit(retired, block.terminatorAddress, lastOpcode);
+            return;
+        }
+
+        exitUnlessBudget(retired + terminator.length, retired, block.terminatorAddress, lastOpcode);
+        emitTerminator(terminator, (short)(block.terminatorAddress + 0x2 * terminator.length));
+        push(retired + terminator.length);
+        method.visitInsn(IRETURN);
+    }
+
+    //region EXITS
+
+    private void exitUnlessBudget(int needed, int retired, short PC, short lastOpcode)
+    {
+        Label fits = new Label();
+        method.visitVarInsn(ILOAD, BUDGET_LOCAL);
+        push(needed);
+        method.visitJumpInsn(IF_ICMPGE, fits);
+        emitExit(retired, PC, lastOpcode);
+        method.visitLabel(fits);
+    }
+
+    //Leaves the machine as the interpreter would after the instructions retired so far, the code after it carries on
+    //with the registers still in locals
+    private void emitExit(int retired, short PC, short lastOpcode)
+    {
+        if(retired > 0)
+        {
+            writeBack();
+            setPC(PC);
+            setCurrentOpcode(lastOpcode);
+        }
+
+        push(retired);
+        method.visitInsn(IRETURN);
+    }
+
+    //endregion
+
+    //region INSTRUCTIONS
+
+    private void emitBody(DecodedInstruction instruction, short next)
+    {
+        int x = instruction.x;
+        int y = instruction.y;
+
+        switch(instruction.kind)
+        {
+            case DecodedInstruction.NOP: break;
+            case DecodedInstruction.CLS: callHandler(next, "cls", "()V"); break;
+            case DecodedInstruction.LOAD_BYTE:
+                push(instruction.kk);
+                storeV(x);
+                break;
+            case DecodedInstruction.ADD_BYTE: emitAdd(x, instruction.kk); break;
+            case DecodedInstruction.LOAD_REGISTER:
+                loadV(y);
+                storeV(x);
+                break;
+            case DecodedInstruction.OR: emitLogic(x, y, IOR); break;
+            case DecodedInstruction.AND: emitLogic(x, y, IAND); break;
+            case DecodedInstruction.XOR: emitLogic(x, y, IXOR); break;
+            case DecodedInstruction.ADD_CARRY:
+                loadUnsignedV(x);
+                loadUnsignedV(y);
+                method.visitInsn(IADD);
+                method.visitVarInsn(ISTORE, RESULT_LOCAL);
+                method.visitVarInsn(ILOAD, RESULT_LOCAL);
+                push(8);
+                method.visitInsn(IUSHR);
+                method.visitVarInsn(ISTORE, FLAG_LOCAL);
+                storeFlagThenResult(x);
+                break;
+            case DecodedInstruction.SUB:
+                //Vx - Vy either way, VF is 1 when Vx > Vy
+                emitDifference(x, y);
+                emitBorrow(y, x);
+                storeFlagThenResult(x);
+                break;
+            case DecodedInstruction.SUBN:
+                //Vx - Vy like CPU.subn, VF is 1 when Vy > Vx
+                emitDifference(x, y);
+                emitBorrow(x, y);
+                storeFlagThenResult(x);
+                break;
+            case DecodedInstruction.SHR:
+                loadUnsignedV(x);
+                push(1);
+                method.visitInsn(IUSHR);
+                method.visitVarInsn(ISTORE, RESULT_LOCAL);
+                loadV(x);
+                push(1);
+                method.visitInsn(IAND);
+                method.visitVarInsn(ISTORE, FLAG_LOCAL);
+                storeFlagThenResult(x);
+                break;
+            case DecodedInstruction.SHL:
+                loadUnsignedV(x);
+                push(1);
+                method.visitInsn(ISHL);
+                method.visitInsn(I2B);
+                method.visitVarInsn(ISTORE, RESULT_LOCAL);
+                loadUnsignedV(x);
+                push(7);
+                method.visitInsn(IUSHR);
+                method.visitVarInsn(ISTORE, FLAG_LOCAL);
+                storeFlagThenResult(x);
+                break;
+            case DecodedInstruction.LOAD_I: emitLoadI(instruction.nnn); break;
+            case DecodedInstruction.ADD_I:
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "getI", "()S", false);
+                push(0xFFFF);
+                method.visitInsn(IAND);
+                loadUnsignedV(x);
+                method.visitInsn(IADD);
+                method.visitInsn(I2S);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setI", "(S)V", false);
+                break;
+            case DecodedInstruction.LOAD_HEX_SPRITE:
+                //Signed like CPU.loadHexSpriteToI
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                push(Utils.SPRITES_STORAGE_STARTING_ADDRESS);
+                loadV(x);
+                push(5);
+                method.visitInsn(IMUL);
+                method.visitInsn(IADD);
+                method.visitInsn(I2S);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setI", "(S)V", false);
+                break;
+            case DecodedInstruction.LOAD_DT_TO_REGISTER:
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "getDT", "()B", false);
+                storeV(x);
+                break;
+            case DecodedInstruction.LOAD_REGISTER_TO_DT:
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                loadV(x);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setDT", "(B)V", false);
+                break;
+            case DecodedInstruction.LOAD_REGISTER_TO_ST:
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                loadV(x);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setST", "(B)V", false);
+                break;
+            case DecodedInstruction.RAND:
+                callHandler(next, "rand", "(BB)V", x, instruction.kk);
+                forget(x, x);
+                break;
+            case DecodedInstruction.DRAW:
+                callHandler(next, "draw", "(BBS)V", x, y, instruction.n);
+                forget(0xF, 0xF);
+                break;
+            case DecodedInstruction.BCD: callHandler(next, "loadVXasBCDtoMemory", "(B)V", x); break;
+            case DecodedInstruction.STORE_REGISTERS: callHandler(next, "loadMultipleRegistersToMemory", "(B)V", x); break;
+            case DecodedInstruction.READ_REGISTERS:
+                callHandler(next, "loadMemoryToRegisters", "(B)V", x);
+                forget(0, x);
+                break;
+            case DecodedInstruction.LOAD_I_DRAW:
+                emitLoadI(instruction.nnn);
+                callHandler(next, "draw", "(BBS)V", instruction.x2, instruction.y2, instruction.n2);
+                forget(0xF, 0xF);
+                break;
+            case DecodedInstruction.LOAD_I_READ_REGISTERS:
+                emitLoadI(instruction.nnn);
+                callHandler(next, "loadMemoryToRegisters", "(B)V", instruction.x2);
+                forget(0, instruction.x2);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a block body instruction: " + instruction.kind);
+        }
+    }
+
+    //Everything is written back first, the PC, current opcode and return value are the same on every path out
+    private void emitTerminator(DecodedInstruction instruction, short next)
+    {
+        int x = instruction.x;
+        int y = instruction.y;
+
+        if(instruction.kind == DecodedInstruction.ADD_SKIP_EQUAL || instruction.kind == DecodedInstruction.ADD_SKIP_NOT_EQUAL)
+        {
+            emitAdd(x, instruction.kk);
+        }
+
+        flush();
+        setCurrentOpcode(instruction.opcode);
+
+        switch(instruction.kind)
+        {
+            case DecodedInstruction.JUMP: setPC(instruction.nnn); break;
+            case DecodedInstruction.JUMP_V0:
+                method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+                push(instruction.nnn & 0xFFF);
+                loadUnsignedV(0);
+                method.visitInsn(IADD);
+                method.visitInsn(I2S);
+                method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setPC", "(S)V", false);
+                break;
+            case DecodedInstruction.SKIP_EQUAL_BYTE:
+                loadV(x);
+                push(instruction.kk);
+                emitSkip(IF_ICMPNE, next);
+                break;
+            case DecodedInstruction.SKIP_NOT_EQUAL_BYTE:
+                loadV(x);
+                push(instruction.kk);
+                emitSkip(IF_ICMPEQ, next);
+                break;
+            case DecodedInstruction.SKIP_EQUAL_REGISTER:
+                loadV(x);
+                loadV(y);
+                emitSkip(IF_ICMPNE, next);
+                break;
+            case DecodedInstruction.SKIP_NOT_EQUAL_REGISTER:
+                loadV(x);
+                loadV(y);
+                emitSkip(IF_ICMPEQ, next);
+                break;
+            case DecodedInstruction.ADD_SKIP_EQUAL:
+                loadV(instruction.x2);
+                push(instruction.kk2);
+                emitSkip(IF_ICMPNE, next);
+                break;
+            case DecodedInstruction.ADD_SKIP_NOT_EQUAL:
+                loadV(instruction.x2);
+                push(instruction.kk2);
+                emitSkip(IF_ICMPEQ, next);
+                break;
+            case DecodedInstruction.CALL: callHandler(next, "call", "(S)V", instruction.nnn); break;
+            case DecodedInstruction.RET: callHandler(next, "ret", "()V"); break;
+            case DecodedInstruction.SKIP_PRESSED: callHandler(next, "skipIfPressed", "(B)V", x); break;
+            case DecodedInstruction.SKIP_NOT_PRESSED: callHandler(next, "skipIfNotPressed", "(B)V", x); break;
+            case DecodedInstruction.WAIT_KEY: callHandler(next, "getKeyPress", "(B)V", x); break;
+            default:
+                throw new IllegalArgumentException("Not a block terminator: " + instruction.kind);
+        }
+    }
+
+    private void emitAdd(int x, byte kk)
+    {
+        loadV(x);
+        push(kk);
+        method.visitInsn(IADD);
+        method.visitInsn(I2B);
+        storeV(x);
+    }
+
+    //OR, AND and XOR of two sign extended bytes are sign extended bytes already
+    private void emitLogic(int x, int y, int operation)
+    {
+        loadV(x);
+        loadV(y);
+        method.visitInsn(operation);
+        storeV(x);
+    }
+
+    private void emitDifference(int x, int y)
+    {
+        loadV(x);
+        loadV(y);
+        method.visitInsn(ISUB);
+        method.visitInsn(I2B);
+        method.visitVarInsn(ISTORE, RESULT_LOCAL);
+    }
+
+    //1 when the unsigned minuend - subtrahend goes negative, without a branch
+    private void emitBorrow(int minuend, int subtrahend)
+    {
+        loadUnsignedV(minuend);
+        loadUnsignedV(subtrahend);
+        method.visitInsn(ISUB);
+        push(31);
+        method.visitInsn(IUSHR);
+        method.visitVarInsn(ISTORE, FLAG_LOCAL);
+    }
+
+    //VF first then Vx, when x is F the result wins like in the CPU handlers
+    private void storeFlagThenResult(int x)
+    {
+        method.visitVarInsn(ILOAD, FLAG_LOCAL);
+        storeV(0xF);
+        method.visitVarInsn(ILOAD, RESULT_LOCAL);
+        method.visitInsn(I2B);
+        storeV(x);
+    }
+
+    private void emitLoadI(short nnn)
+    {
+        method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+        push(nnn);
+        method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setI", "(S)V", false);
+    }
+
+    //Compares the two ints on the stack, skipping the next instruction unless the jump to not skipping is taken
+    private void emitSkip(int notSkipping, short next)
+    {
+        Label noSkip = new Label();
+        Label done = new Label();
+        method.visitJumpInsn(notSkipping, noSkip);
+        setPC((short)(next + 0x2));
+        method.visitJumpInsn(GOTO, done);
+        method.visitLabel(noSkip);
+        setPC(next);
+        method.visitLabel(done);
+    }
+
+    //The handler sees the registers and PC exactly as the interpreter would have them
+    private void callHandler(short next, String name, String descriptor, int... operands)
+    {
+        flush();
+        setPC(next);
+
+        method.visitVarInsn(ALOAD, CPU_LOCAL);
+        for(int operand : operands) { push(operand); }
+        method.visitMethodInsn(INVOKEVIRTUAL, CPU_NAME, name, descriptor, false);
+    }
+
+    //endregion
+
+    //region REGISTERS
+
+    private void loadV(int x)
+    {
+        if(!loaded[x])
+        {
+            method.visitVarInsn(ALOAD, V_LOCAL);
+            push(x);
+            method.visitInsn(BALOAD);
+            method.visitVarInsn(ISTORE, FIRST_REGISTER_LOCAL + x);
+            loaded[x] = true;
+        }
+
+        method.visitVarInsn(ILOAD, FIRST_REGISTER_LOCAL + x);
+    }
+
+    private void loadUnsignedV(int x)
+    {
+        loadV(x);
+        push(0xFF);
+        method.visitInsn(IAND);
+    }
+
+    //Takes the value on the stack, it must already be a sign extended byte
+    private void storeV(int x)
+    {
+        method.visitVarInsn(ISTORE, FIRST_REGISTER_LOCAL + x);
+        loaded[x] = true;
+        dirty[x] = true;
+    }
+
+    //Stores the registers changed since they were last written back, without marking them clean:
+    //exits use it on a side path while the code after them still has to write them back
+    private void writeBack()
+    {
+        for(int x = 0; x < 16; x++)
+        {
+            if(!dirty[x]) { continue; }
+
+            method.visitVarInsn(ALOAD, V_LOCAL);
+            push(x);
+            method.visitVarInsn(ILOAD, FIRST_REGISTER_LOCAL + x);
+            method.visitInsn(BASTORE);
+        }
+    }
+
+    private void flush()
+    {
+        writeBack();
+        Arrays.fill(dirty, false);
+    }
+
+    //A handler wrote these, they have to be read again from the array
+    private void forget(int first, int last)
+    {
+        for(int x = first; x <= last; x++)
+        {
+            loaded[x] = false;
+            dirty[x] = false;
+        }
+    }
+
+    //endregion
+
+    private void setPC(short PC)
+    {
+        method.visitVarInsn(ALOAD, REGISTERS_LOCAL);
+        push(PC);
+        method.visitMethodInsn(INVOKEVIRTUAL, REGISTERS_NAME, "setPC", "(S)V", false);
+    }
+
+    private void setCurrentOpcode(short opcode)
+    {
+        method.visitVarInsn(ALOAD, CPU_LOCAL);
+        push(opcode);
+        method.visitMethodInsn(INVOKEVIRTUAL, CPU_NAME, "setCurrentOpcode", "(S)V", false);
+    }
+
+    private void push(int value)
+    {
+        if(value >= -1 && value <= 5) { method.visitInsn(ICONST_0 + value); }
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) { method.visitIntInsn(BIPUSH, value); }
+        else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) { method.visitIntInsn(SIPUSH, value); }
+        else { method.visitLdcInsn(value); }
+    }
+}
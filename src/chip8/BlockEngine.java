@@ -0,0 +1,319 @@
+package chip8;
+
+import exceptions.UnknownOpcodeException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+///Execution engine running whole basic blocks at a time on top of the CPU handlers.
+///The PC is only written once per block, and registers and memory are left exactly as the interpreter leaves them at every block exit.
+///Blocks that keep running are compiled to a class of their own by BlockCompiler, the others are run here from their
+///decoded instructions, which is also what's left when the compiler can't be used.
+///Code that keeps rewriting itself is sent back to the interpreter.
+public class BlockEngine implements MemoryListener {
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    //Number of times a block can be rewritten before its address is left to the interpreter
+    private static final int MAX_INVALIDATIONS = 4;
+    //Runs before a block gets compiled, defining a class costs about as much as interpreting a block a few thousand times
+    private static final int DEFAULT_COMPILE_THRESHOLD = 32;
+    public static final int NEVER_COMPILE = -1;
+
+    private static final Logger LOGGER = Logger.getLogger(BlockEngine.class.getName());
+
+    private CPU cpu;
+    private Registers registers;
+    private InstructionCache instructionCache;
+
+    private BasicBlock[] blocks;
+    private List<BasicBlock> liveBlocks;
+    private short[] coveringBlocks; //Number of live blocks covering each byte, writes to plain data stay cheap
+    private byte[] invalidations;
+
+    private int retiredBeforeFault;
+    private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+
+    public BlockEngine(CPU cpu, Memory memory, Registers registers)
+    {
+        this.cpu = cpu;
+        this.registers = registers;
+        this.instructionCache = cpu.getInstructionCache();
+
+        this.blocks = new BasicBlock[Utils.MEMORY_SIZE];
+        this.liveBlocks = new ArrayList<>();
+        this.coveringBlocks = new short[Utils.MEMORY_SIZE];
+        this.invalidations = new byte[Utils.MEMORY_SIZE];
+
+        memory.addMemoryListener(this);
+    }
+
+    ///Instructions that ran before the one that made the last runBlock throw, they changed the machine like any other
+    public int getRetiredBeforeFault() { return retiredBeforeFault; }
+
+    ///Number of runs after which a block is compiled to a class, 0 compiles blocks on their first run
+    public int getCompileThreshold() { return compileThreshold; }
+    public void setCompileThreshold(int value) { compileThreshold = value; }
+
+    public int getCompiledBlockCount()
+    {
+        int count = 0;
+        for(BasicBlock block : liveBlocks) { if(block.compiled != null) { count++; } }
+
+        return count;
+    }
+
+    ///Runs at most one basic block, stopping exactly when the budget of instructions is spent.
+    ///Returns the number of CHIP-8 instructions retired, never more than the budget.
+    ///When an instruction throws, getRetiredBeforeFault tells how many ran before it.
+    public int runBlock(int budget) throws UnknownOpcodeException
+    {
+        short PC = registers.getPC();
+        BasicBlock block = getBlock(PC);
+
+        if(block == null)
+        {
+            try
+            {
+                return budget > 1 ? cpu.executeNextInstruction() : runSingleInstruction();
+            }
+            catch(UnknownOpcodeException | RuntimeException e)
+            {
+                DecodedInstruction instruction = instructionCache.get(PC);
+                retiredBeforeFault = budget > 1 && instruction != null ? faultingOffset(instruction) : 0;
+                throw e;
+            }
+        }
+
+        if(block.compiled == null && compileThreshold != NEVER_COMPILE && block.runs++ == compileThreshold) { compile(block); }
+        if(block.compiled != null) { return runCompiled(block, budget); }
+
+        DecodedInstruction[] body = block.body;
+        //A fused pair would overshoot, its first half runs alone so frames end on the same instruction as when stepping
+        if(body.length > 0 ? body[0].length > budget : block.terminator != null && block.terminator.length > budget)
+        {
+            retiredBeforeFault = 0;
+            return runSingleInstruction();
+        }
+
+        int retired = 0;
+        int i = 0;
+
+        try
+        {
+            while(i < body.length && retired + body[i].length <= budget)
+            {
+                DecodedInstruction instruction = body[i];
+                cpu.runDecodedInstruction(instruction);
+                retired += instruction.length;
+                i++;
+
+                //The block rewrote itself, what's left of it is stale
+                if(!block.valid) { break; }
+            }
+        }
+        catch(RuntimeException e)
+        {
+            //Same PC the interpreter would leave behind, right after the faulting instruction
+            DecodedInstruction faulting = body[i];
+            registers.setPC((short)(block.bodyAddresses[i] + 0x2 * faulting.length));
+            cpu.setCurrentOpcode(faulting.opcode);
+            retiredBeforeFault = retired + faultingOffset(faulting);
+            throw e;
+        }
+
+        if(i < body.length || !block.valid || block.terminator == null || retired + block.terminator.length > budget)
+        {
+            short next = i < body.length ? block.bodyAddresses[i] : block.terminatorAddress;
+            registers.setPC(next);
+            if(i > 0) { cpu.setCurrentOpcode(body[i - 1].opcode); }
+            return retired;
+        }
+
+        DecodedInstruction terminator = block.terminator;
+        registers.setPC((short)(block.terminatorAddress + 0x2 * terminator.length));
+        cpu.setCurrentOpcode(terminator.opcode);
+        try
+        {
+            cpu.runDecodedInstruction(terminator);
+        }
+        catch(RuntimeException e)
+        {
+            retiredBeforeFault = retired + faultingOffset(terminator);
+            throw e;
+        }
+
+        return retired + terminator.length;
+    }
+
+    private void compile(BasicBlock block)
+    {
+        try
+        {
+            block.compiled = BlockCompiler.compile(block);
+        }
+        catch(LinkageError e)
+        {
+            //No bytecode library to generate classes with, every block stays interpreted
+            LOGGER.warning("Blocks can't be compiled, interpreting them: " + e);
+            compileThreshold = NEVER_COMPILE;
+        }
+    }
+
+    private int runCompiled(BasicBlock block, int budget) throws UnknownOpcodeException
+    {
+        int retired;
+        try
+        {
+            retired = block.compiled.run(cpu, registers, block, budget);
+        }
+        catch(RuntimeException e)
+        {
+            retiredBeforeFault = retiredBeforeCompiledFault(block);
+            throw e;
+        }
+
+        //A fused pair at the start would overshoot, its first half runs alone
+        if(retired == 0)
+        {
+            retiredBeforeFault = 0;
+            return runSingleInstruction();
+        }
+
+        return retired;
+    }
+
+    //Compiled blocks point the PC past an instruction before running its handler, so the PC tells which one threw
+    private int retiredBeforeCompiledFault(BasicBlock block)
+    {
+        short PC = registers.getPC();
+        int retired = 0;
+        for(int i = 0; i < block.body.length; i++)
+        {
+            DecodedInstruction instruction = block.body[i];
+            if(block.bodyAddresses[i] + 0x2 * instruction.length == PC)
+            {
+                cpu.setCurrentOpcode(instruction.opcode);
+                return retired + faultingOffset(instruction);
+            }
+            retired += instruction.length;
+        }
+
+        cpu.setCurrentOpcode(block.terminator.opcode);
+        return retired + faultingOffset(block.terminator);
+    }
+
+    //Only the second half of a superinstruction can fault, the first half has retired by then
+    private static int faultingOffset(DecodedInstruction instruction) { return instruction.length - 1; }
+
+    private int runSingleInstruction() throws UnknownOpcodeException
+    {
+        cpu.fetchOpcode();
+        cpu.incrementPC();
+        cpu.decodeAndRunOpcode();
+
+        return 1;
+    }
+
+    ///Runs blocks until the given number of instructions retired
+    public int run(int instructions) throws UnknownOpcodeException
+    {
+        int retired = 0;
+        while(retired < instructions)
+        {
+            retired += runBlock(instructions - retired);
+        }
+
+        return retired;
+    }
+
+    public void clear()
+    {
+        for(BasicBlock block : liveBlocks) { block.valid = false; }
+
+        liveBlocks.clear();
+        Arrays.fill(blocks, null);
+        Arrays.fill(coveringBlocks, (short)0);
+        Arrays.fill(invalidations, (byte)0);
+    }
+
+    @Override
+    public void onMemoryWrite(short address)
+    {
+        if(coveringBlocks[address] == 0) { return; }
+
+        for(int i = liveBlocks.size() - 1; i >= 0; i--)
+        {
+            BasicBlock block = liveBlocks.get(i);
+            if(block.covers(address))
+            {
+                liveBlocks.remove(i);
+                evict(block);
+            }
+        }
+    }
+
+    private BasicBlock getBlock(short address)
+    {
+        if(address < 0 || address >= Utils.MAX_MEMORY_ADDRESS) { return null; }
+        if(invalidations[address] >= MAX_INVALIDATIONS) { return null; }
+
+        BasicBlock block = blocks[address];
+        if(block == null)
+        {
+            block = compile(address);
+            if(block == null) { return null; }
+
+            blocks[address] = block;
+            liveBlocks.add(block);
+            for(int i = block.startAddress; i <= block.endAddress; i++) { coveringBlocks[i]++; }
+        }
+
+        return block;
+    }
+
+    private void evict(BasicBlock block)
+    {
+        block.valid = false;
+        blocks[block.startAddress] = null;
+        invalidations[block.startAddress]++;
+
+        for(int i = block.startAddress; i <= block.endAddress; i++) { coveringBlocks[i]--; }
+    }
+
+    private BasicBlock compile(short startAddress)
+    {
+        List<DecodedInstruction> body = new ArrayList<>();
+        List<Short> bodyAddresses = new ArrayList<>();
+        DecodedInstruction terminator = null;
+
+        short address = startAddress;
+        while(body.size() < MAX_BLOCK_INSTRUCTIONS)
+        {
+            DecodedInstruction instruction = instructionCache.get(address);
+            if(instruction == null) { break; }
+
+            if(instruction.endsBasicBlock())
+            {
+                terminator = instruction;
+                break;
+            }
+
+            body.add(instruction);
+            bodyAddresses.add(address);
+            address = (short)(address + 0x2 * instruction.length);
+        }
+
+        if(body.isEmpty() && terminator == null) { return null; }
+
+        DecodedInstruction[] instructions = body.toArray(new DecodedInstruction[0]);
+        short[] addresses = new short[bodyAddresses.size()];
+        for(int i = 0; i < addresses.length; i++) { addresses[i] = bodyAddresses.get(i); }
+
+        int length = terminator != null ? terminator.length : 0;
+        short endAddress = (short)(address + 0x2 * length - 1);
+        if(endAddress < startAddress) { endAddress = startAddress; }
+
+        return new BasicBlock(startAddress, instructions, addresses, terminator, address, endAddress);
+    }
+}
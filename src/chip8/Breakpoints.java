@@ -0,0 +1,131 @@
+package chip8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+///PC breakpoints, conditional breakpoints on register values and memory watchpoints for a Machine.
+///None of it costs anything while nothing is armed: Machine looks at isArmed once per block and only then swaps to running
+///one instruction at a time through the reference interpreter, asking check before each one.
+///Watchpoints work out what the next instruction will touch from its opcode and I, and stop before it runs.
+public class Breakpoints {
+    private static class Conditional {
+        final int address;   /* -1 for any PC */
+        final Predicate<Registers> condition;
+
+        Conditional(int address, Predicate<Registers> condition)
+        {
+            this.address = address;
+            this.condition = condition;
+        }
+    }
+
+    private final boolean[] pcBreakpoints = new boolean[Utils.MEMORY_SIZE];
+    private final boolean[] readWatchpoints = new boolean[Utils.MEMORY_SIZE];
+    private final boolean[] writeWatchpoints = new boolean[Utils.MEMORY_SIZE];
+    private final List<Conditional> conditionals = new ArrayList<>();
+
+    //Set from the UI thread while the machine runs
+    private volatile int armedCount;
+
+    public boolean isArmed() { return armedCount != 0; }
+
+    //region ARMING
+
+    public synchronized void addBreakpoint(int address) { armedCount += set(pcBreakpoints, address, true); }
+    public synchronized void removeBreakpoint(int address) { armedCount -= set(pcBreakpoints, address, false); }
+
+    ///Breaks at the address when the condition holds, an address of -1 checks it before every instruction
+    public synchronized void addBreakpoint(int address, Predicate<Registers> condition)
+    {
+        conditionals.add(new Conditional(address, condition));
+        armedCount++;
+    }
+
+    ///Removes a breakpoint added with the same address and the same condition instance, does nothing if there is none
+    public synchronized void removeBreakpoint(int address, Predicate<Registers> condition)
+    {
+        for(int i = 0; i < conditionals.size(); i++)
+        {
+            Conditional conditional = conditionals.get(i);
+            if(conditional.address != address || conditional.condition != condition) { continue; }
+
+            conditionals.remove(i);
+            armedCount--;
+            return;
+        }
+    }
+
+    public synchronized void addReadWatchpoint(int address) { armedCount += set(readWatchpoints, address, true); }
+    public synchronized void removeReadWatchpoint(int address) { armedCount -= set(readWatchpoints, address, false); }
+    public synchronized void addWriteWatchpoint(int address) { armedCount += set(writeWatchpoints, address, true); }
+    public synchronized void removeWriteWatchpoint(int address) { armedCount -= set(writeWatchpoints, address, false); }
+
+    public synchronized void clear()
+    {
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            pcBreakpoints[address] = false;
+            readWatchpoints[address] = false;
+            writeWatchpoints[address] = false;
+        }
+        conditionals.clear();
+        armedCount = 0;
+    }
+
+    //Returns 1 if the flag changed, 0 if it already had the value
+    private static int set(boolean[] flags, int address, boolean value)
+    {
+        if(address < 0 || address >= Utils.MEMORY_SIZE) { throw new IllegalArgumentException("Address out of range " + address); }
+        if(flags[address] == value) { return 0; }
+
+        flags[address] = value;
+        return 1;
+    }
+
+    ///Holds when Vx has the value, for conditional breakpoints
+    public static Predicate<Registers> registerEquals(int x, int value)
+    {
+        return registers -> (registers.getVAtAddress(x) & 0xFF) == value;
+    }
+
+    //endregion
+
+    ///Why the instruction at PC should not run yet, or null if nothing is hit
+    synchronized String check(Registers registers, Memory memory)
+    {
+        int PC = registers.getPC();
+        if(PC < 0 || PC >= Utils.MEMORY_SIZE - 1) { return null; }
+
+        if(pcBreakpoints[PC]) { return String.format("breakpoint at 0x%03X", PC); }
+
+        for(Conditional conditional : conditionals)
+        {
+            if((conditional.address == -1 || conditional.address == PC) && conditional.condition.test(registers))
+            {
+                return String.format("condition met at 0x%03X", PC);
+            }
+        }
+
+        int opcode = ((memory.getMemoryAtAddress((short) PC) & 0xFF) << 8) | (memory.getMemoryAtAddress((short)(PC + 1)) & 0xFF);
+        int I = registers.getI() & 0xFFFF;
+        int x = (opcode >> 8) & 0xF;
+
+        if((opcode & 0xF000) == 0xD000) { return watched(readWatchpoints, "read", I, opcode & 0xF, PC); }
+        if((opcode & 0xF0FF) == 0xF033) { return watched(writeWatchpoints, "write", I, 3, PC); }
+        if((opcode & 0xF0FF) == 0xF055) { return watched(writeWatchpoints, "write", I, x + 1, PC); }
+        if((opcode & 0xF0FF) == 0xF065) { return watched(readWatchpoints, "read", I, x + 1, PC); }
+
+        return null;
+    }
+
+    private static String watched(boolean[] watchpoints, String access, int start, int length, int PC)
+    {
+        for(int address = start; address < start + length && address < Utils.MEMORY_SIZE; address++)
+        {
+            if(watchpoints[address]) { return String.format("%s of 0x%03X at 0x%03X", access, address, PC); }
+        }
+
+        return null;
+    }
+}
@@ -1,31 +1,36 @@
 package chip8;
 
-import java.util.Random;
 import exceptions.UnknownOpcodeException;
 
-import javax.swing.*;
+import java.nio.ByteBuffer;
+
 
 public class CPU {
 
     private Memory memory;
     private Registers registers;
-    private Keyboard keyboard;
+    private InputSource keyboard;
 
     private short currentOpcode;
+    private InstructionCache instructionCache;
 
     private boolean randomEnabled = true;
-    private Random random;
+    private SavableRandom random;
 
-    public CPU(Memory memory, Registers registers, Keyboard keyboard)
+    public CPU(Memory memory, Registers registers, InputSource keyboard)
     {
         this.memory = memory;
         this.registers = registers;
         this.keyboard = keyboard;
 
-        this.random = new Random();
+        this.random = new SavableRandom();
+
+        this.instructionCache = new InstructionCache(memory);
+        memory.addMemoryListener(instructionCache);
     }
 
     public short getCurrentOpcode() { return currentOpcode; }
+    public InstructionCache getInstructionCache() { return instructionCache; }
 
     public void fetchOpcode()
     {
@@ -53,11 +58,24 @@ public class CPU {
     private int byteToUnsignedInt(byte val) { return val & 0xFF; }
 
     public void toggleRandom() { randomEnabled ^= true; }
+    ///Makes CXKK reproducible from one run to the next
+    public void setRandomSeed(long seed) { random.setSeed(seed); }
+
+    //region STATE
+    //currentOpcode is left out, the block engines only keep it up to date for display and it would make
+    //otherwise identical states differ depending on the engine that ran them
+    static final int STATE_SIZE = Long.BYTES;
+
+    void writeState(ByteBuffer buffer)
+    {
+        buffer.putLong(random.getState());
+    }
 
-    private boolean isBitSet(byte b, int bit)
+    void readState(ByteBuffer buffer)
     {
-        return (b & (1 << bit)) != 0;
+        random.setState(buffer.getLong());
     }
+    //endregion
 
     public void decodeAndRunOpcode() throws UnknownOpcodeException
     {
@@ -68,66 +86,66 @@ public class CPU {
                 else if(getCurrentOpcodeLastDigit() == 0xE) { ret(); }
                 break;
             case 0x1000:
-                jump();
+                jump(getNNN());
                 break;
             case 0x2000:
-                call();
+                call(getNNN());
                 break;
             case 0x3000:
-                skipOnEqualByte();
+                skipOnEqualByte(getX(), getKK());
                 break;
             case 0x4000:
-                skipOnNonEqualByte();
+                skipOnNonEqualByte(getX(), getKK());
                 break;
             case 0x5000:
-                skipOnEqualRegister();
+                skipOnEqualRegister(getX(), getY());
                 break;
             case 0x6000:
-                loadToRegister();
+                loadToRegister(getX(), getKK());
                 break;
             case 0x7000:
-                addOnRegister();
+                addOnRegister(getX(), getKK());
                 break;
             case (short)0x8000:
-                if(getCurrentOpcodeLastDigit()== 0x0) { duplicateRegister(); }
-                else if(getCurrentOpcodeLastDigit() == 0x1) { orRegister(); }
-                else if(getCurrentOpcodeLastDigit() == 0x2) { andRegister(); }
-                else if(getCurrentOpcodeLastDigit() == 0x3) { xorRegister(); }
-                else if(getCurrentOpcodeLastDigit() == 0x4) { addToRegCarry(); }
-                else if(getCurrentOpcodeLastDigit() == 0x5) { sub(); }
-                else if(getCurrentOpcodeLastDigit() == 0x6) { shr(); }
-                else if(getCurrentOpcodeLastDigit() == 0x7) { subn(); }
-                else if(getCurrentOpcodeLastDigit() == 0xE) { shl(); }
+                if(getCurrentOpcodeLastDigit()== 0x0) { duplicateRegister(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x1) { orRegister(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x2) { andRegister(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x3) { xorRegister(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x4) { addToRegCarry(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x5) { sub(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0x6) { shr(getX()); }
+                else if(getCurrentOpcodeLastDigit() == 0x7) { subn(getX(), getY()); }
+                else if(getCurrentOpcodeLastDigit() == 0xE) { shl(getX()); }
                 break;
             case (short)0x9000:
-                sneRegister();
+                sneRegister(getX(), getY());
                 break;
             case (short)0xA000:
-                loadToI();
+                loadToI(getNNN());
                 break;
             case (short)0xB000:
-                jumpSum();
+                jumpSum(getNNN());
                 break;
             case (short)0xC000:
-                rand();
+                rand(getX(), getKK());
                 break;
             case (short)0xD000:
-                draw();
+                draw(getX(), getY(), getN());
                 break;
             case (short)0xE000:
-                if(getCurrentOpcodeLastTwoDigit() == 0x9E) { skipIfPressed(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0xA1) { skipIfNotPressed(); }
+                if(getCurrentOpcodeLastTwoDigit() == 0x9E) { skipIfPressed(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0xA1) { skipIfNotPressed(getX()); }
                 break;
             case (short)0xF000:
-                if(getCurrentOpcodeLastTwoDigit() == 0x07) { loadDTOnRegister(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x0A) { getKeyPress(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x15) { loadRegisterOnDT(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x18) { loadRegisterOnST(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x1E) { addRegisterToI(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x29) { loadHexSpriteToI(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x33) { loadVXasBCDtoMemory(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x55) { loadMultipleRegistersToMemory(); }
-                else if(getCurrentOpcodeLastTwoDigit() == 0x65) { loadMemoryToRegisters(); }
+                if(getCurrentOpcodeLastTwoDigit() == 0x07) { loadDTOnRegister(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x0A) { getKeyPress(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x15) { loadRegisterOnDT(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x18) { loadRegisterOnST(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x1E) { addRegisterToI(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x29) { loadHexSpriteToI(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x33) { loadVXasBCDtoMemory(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x55) { loadMultipleRegistersToMemory(getX()); }
+                else if(getCurrentOpcodeLastTwoDigit() == 0x65) { loadMemoryToRegisters(getX()); }
                 break;
 
             default:
@@ -135,23 +153,107 @@ public class CPU {
         }
     }
 
+    ///Runs the instruction at PC through the predecode cache, fetching, incrementing the PC and executing in one go.
+    ///Returns the number of CHIP-8 instructions retired, which is 2 when a superinstruction ran.
+    public int executeNextInstruction() throws UnknownOpcodeException
+    {
+        short PC = registers.getPC();
+        DecodedInstruction instruction = instructionCache.get(PC);
+
+        //No full opcode at PC, let the reference path report it
+        if(instruction == null)
+        {
+            fetchOpcode();
+            incrementPC();
+            decodeAndRunOpcode();
+            return 1;
+        }
+
+        currentOpcode = instruction.opcode;
+        registers.setPC((short)(PC + 0x2 * instruction.length));
+        runDecodedInstruction(instruction);
+
+        return instruction.length;
+    }
+
+    void setCurrentOpcode(short opcode) { currentOpcode = opcode; }
+
+    ///Runs an already decoded instruction, the PC must already point past it
+    void runDecodedInstruction(DecodedInstruction instruction)
+    {
+        switch(instruction.kind)
+        {
+            case DecodedInstruction.NOP: break;
+            case DecodedInstruction.CLS: cls(); break;
+            case DecodedInstruction.RET: ret(); break;
+            case DecodedInstruction.JUMP: jump(instruction.nnn); break;
+            case DecodedInstruction.CALL: call(instruction.nnn); break;
+            case DecodedInstruction.SKIP_EQUAL_BYTE: skipOnEqualByte(instruction.x, instruction.kk); break;
+            case DecodedInstruction.SKIP_NOT_EQUAL_BYTE: skipOnNonEqualByte(instruction.x, instruction.kk); break;
+            case DecodedInstruction.SKIP_EQUAL_REGISTER: skipOnEqualRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.LOAD_BYTE: loadToRegister(instruction.x, instruction.kk); break;
+            case DecodedInstruction.ADD_BYTE: addOnRegister(instruction.x, instruction.kk); break;
+            case DecodedInstruction.LOAD_REGISTER: duplicateRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.OR: orRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.AND: andRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.XOR: xorRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.ADD_CARRY: addToRegCarry(instruction.x, instruction.y); break;
+            case DecodedInstruction.SUB: sub(instruction.x, instruction.y); break;
+            case DecodedInstruction.SHR: shr(instruction.x); break;
+            case DecodedInstruction.SUBN: subn(instruction.x, instruction.y); break;
+            case DecodedInstruction.SHL: shl(instruction.x); break;
+            case DecodedInstruction.SKIP_NOT_EQUAL_REGISTER: sneRegister(instruction.x, instruction.y); break;
+            case DecodedInstruction.LOAD_I: loadToI(instruction.nnn); break;
+            case DecodedInstruction.JUMP_V0: jumpSum(instruction.nnn); break;
+            case DecodedInstruction.RAND: rand(instruction.x, instruction.kk); break;
+            case DecodedInstruction.DRAW: draw(instruction.x, instruction.y, instruction.n); break;
+            case DecodedInstruction.SKIP_PRESSED: skipIfPressed(instruction.x); break;
+            case DecodedInstruction.SKIP_NOT_PRESSED: skipIfNotPressed(instruction.x); break;
+            case DecodedInstruction.LOAD_DT_TO_REGISTER: loadDTOnRegister(instruction.x); break;
+            case DecodedInstruction.WAIT_KEY: getKeyPress(instruction.x); break;
+            case DecodedInstruction.LOAD_REGISTER_TO_DT: loadRegisterOnDT(instruction.x); break;
+            case DecodedInstruction.LOAD_REGISTER_TO_ST: loadRegisterOnST(instruction.x); break;
+            case DecodedInstruction.ADD_I: addRegisterToI(instruction.x); break;
+            case DecodedInstruction.LOAD_HEX_SPRITE: loadHexSpriteToI(instruction.x); break;
+            case DecodedInstruction.BCD: loadVXasBCDtoMemory(instruction.x); break;
+            case DecodedInstruction.STORE_REGISTERS: loadMultipleRegistersToMemory(instruction.x); break;
+            case DecodedInstruction.READ_REGISTERS: loadMemoryToRegisters(instruction.x); break;
+
+            //region SUPERINSTRUCTIONS
+            case DecodedInstruction.LOAD_I_DRAW:
+                loadToI(instruction.nnn);
+                draw(instruction.x2, instruction.y2, instruction.n2);
+                break;
+            case DecodedInstruction.LOAD_I_READ_REGISTERS:
+                loadToI(instruction.nnn);
+                loadMemoryToRegisters(instruction.x2);
+                break;
+            case DecodedInstruction.ADD_SKIP_EQUAL:
+                addOnRegister(instruction.x, instruction.kk);
+                skipOnEqualByte(instruction.x2, instruction.kk2);
+                break;
+            case DecodedInstruction.ADD_SKIP_NOT_EQUAL:
+                addOnRegister(instruction.x, instruction.kk);
+                skipOnNonEqualByte(instruction.x2, instruction.kk2);
+                break;
+            //endregion
+
+            default:
+                break;
+        }
+    }
+
     //region OPCODES
     ///00E0
     ///Clear the display
-    private void cls()
+    void cls()
     {
-        for(byte x = 0; x < Utils.SCREEN_WIDTH; x++)
-        {
-            for(byte y = 0; y < Utils.SCREEN_HEIGHT; y++)
-            {
-                memory.setPixelAtPosition(x, y, false);
-            }
-        }
+        memory.clearScreen();
     }
 
     ///00EE
     ///Returns from a subroutine
-    private void ret()
+    void ret()
     {
         short stackTopAddress = memory.getStackAtValue(registers.getSP());
         registers.setPC(stackTopAddress);
@@ -160,117 +262,113 @@ public class CPU {
 
     ///1NNN
     ///Sets the PC to NNN
-    private void jump()
+    void jump(short nnn)
     {
-        registers.setPC(getNNN());
+        registers.setPC(nnn);
     }
 
     ///2NNN
     ///Calls Calls subroutine at NNN
-    private void call()
+    void call(short nnn)
     {
         registers.setSP((byte)(registers.getSP() + 1));
         memory.setStackAtValue(registers.getSP(), registers.getPC());
 
-        registers.setPC(getNNN());
+        registers.setPC(nnn);
     }
 
     ///3XKK
     ///Compares register Vx to kk, if they are equal, skip the next instruction
-    private void skipOnEqualByte()
+    void skipOnEqualByte(byte x, byte kk)
     {
-        byte xValue = registers.getVAtAddress(getX());
+        byte xValue = registers.getVAtAddress(x);
 
-        if(getKK() == xValue) { registers.setPC((short) (registers.getPC() + 0x2)); }
+        if(kk == xValue) { registers.setPC((short) (registers.getPC() + 0x2)); }
     }
 
     ///4XKK
     ///Compares register Vx to kk, if they are equal, skip the next instruction
-    private void skipOnNonEqualByte()
+    void skipOnNonEqualByte(byte x, byte kk)
     {
-        byte xValue = registers.getVAtAddress(getX());
+        byte xValue = registers.getVAtAddress(x);
 
-        if(getKK() != xValue) { registers.setPC((short) (registers.getPC() + 0x2)); }
+        if(kk != xValue) { registers.setPC((short) (registers.getPC() + 0x2)); }
     }
 
     ///5XY0
     ///Compares register Vx to Vy, if equal, skip the next instruction
-    private void skipOnEqualRegister()
+    void skipOnEqualRegister(byte x, byte y)
     {
-        short xValue = registers.getVAtAddress(getX());
-        short yValue = registers.getVAtAddress(getY());
+        short xValue = registers.getVAtAddress(x);
+        short yValue = registers.getVAtAddress(y);
 
         if(xValue == yValue) { registers.setPC((short) (registers.getPC() + 0x2)); }
     }
 
     ///6XKK
     ///Puts the value of KK into Vx
-    private void loadToRegister()
+    void loadToRegister(byte x, byte kk)
     {
-        registers.setVAtAddress(getX(), getKK());
+        registers.setVAtAddress(x, kk);
     }
 
     ///7XKK
     ///Adds the value kk to the value of register Vx, then stores the result in Vx.
-    private void addOnRegister()
+    void addOnRegister(byte x, byte kk)
     {
-        byte xValue = registers.getVAtAddress(getX());
-        byte kk = getKK();
-        byte sum = (byte) byteToUnsignedInt((byte) (getKK() + xValue));
+        byte xValue = registers.getVAtAddress(x);
+        byte sum = (byte) byteToUnsignedInt((byte) (kk + xValue));
 
-        registers.setVAtAddress(getX(), sum);
+        registers.setVAtAddress(x, sum);
     }
 
     ///8XY0
     ///Stores the value of register Vy in register Vx.
-    private void duplicateRegister()
+    void duplicateRegister(byte x, byte y)
     {
-        byte yValue = registers.getVAtAddress(getY());
+        byte yValue = registers.getVAtAddress(y);
 
-        registers.setVAtAddress(getX(), yValue);
+        registers.setVAtAddress(x, yValue);
     }
 
     ///8XY1
     ///Performs a bitwise OR on the values of Vx and Vy, then stores the result in Vx
-    private void orRegister()
+    void orRegister(byte x, byte y)
     {
-        byte xValue = registers.getVAtAddress(getX());
-        byte yValue = registers.getVAtAddress(getY());
+        byte xValue = registers.getVAtAddress(x);
+        byte yValue = registers.getVAtAddress(y);
         byte orResult = (byte) (xValue | yValue);
 
-        registers.setVAtAddress(getX(), orResult);
+        registers.setVAtAddress(x, orResult);
     }
 
     ///8XY2
     ///Performs a bitwise OR on the values of Vx and Vy, then stores the result in Vx
-    private void andRegister()
+    void andRegister(byte x, byte y)
     {
-        byte xValue = registers.getVAtAddress(getX());
-        byte yValue = registers.getVAtAddress(getY());
+        byte xValue = registers.getVAtAddress(x);
+        byte yValue = registers.getVAtAddress(y);
         byte andResult = (byte) (xValue & yValue);
 
-        registers.setVAtAddress(getX(), andResult);
+        registers.setVAtAddress(x, andResult);
     }
 
     ///8XY3
     ///Performs a bitwise exclusive OR on the values of Vx and Vy, then stores the result in Vx
-    private void xorRegister()
+    void xorRegister(byte x, byte y)
     {
-        byte xValue = registers.getVAtAddress(getX());
-        byte yValue = registers.getVAtAddress(getY());
+        byte xValue = registers.getVAtAddress(x);
+        byte yValue = registers.getVAtAddress(y);
         byte xorResult = (byte) (xValue ^ yValue);
 
-        registers.setVAtAddress(getX(), xorResult);
+        registers.setVAtAddress(x, xorResult);
     }
 
     ///8XY4
     ///The values of Vx and Vy are added together. If the result is greater than 8 bits (i.e., > 255,) VF is set to 1,
     ///otherwise 0. Only the lowest 8 bits of the result are kept, and stored in Vx
-    private void addToRegCarry()
+    void addToRegCarry(byte x, byte y)
     {
-        byte x = getX();
-        byte y = getY();
-
         int uSign_xValue = registers.getVAtAddress(x) & 0xff;
         int uSign_yValue = registers.getVAtAddress(y) & 0xff;
         int uSign_product = (registers.getVAtAddress(x) + registers.getVAtAddress(y)) & 0xff;
@@ -289,10 +387,10 @@ public class CPU {
 
     ///8XY5
     ///If Vx > Vy, then VF is set to 1, otherwise 0. Then Vy is subtracted from Vx, and the results stored in Vx
-    private void sub()
+    void sub(byte x, byte y)
     {
-        byte vx = registers.getVAtAddress(getX());
-        byte vy = registers.getVAtAddress(getY());
+        byte vx = registers.getVAtAddress(x);
+        byte vy = registers.getVAtAddress(y);
         int uSign_vx = byteToUnsignedInt(vx);
         int uSign_vy = byteToUnsignedInt(vy);
 
@@ -300,27 +398,27 @@ public class CPU {
         else { registers.setVAtAddress(0xF, (byte) 0x0); }
 
         byte result = (byte) (vx - vy);
-        registers.setVAtAddress(getX(), result);
+        registers.setVAtAddress(x, result);
     }
 
     ///8XY6
     ///Shifts VX right by one. VF is set to the value of the least significant bit of VX before the shift.
-    private void shr()
+    void shr(byte x)
     {
-        byte lsb = (byte)(registers.getVAtAddress(getX()) & (byte)0x01);
-        byte vx = registers.getVAtAddress(getX());
+        byte lsb = (byte)(registers.getVAtAddress(x) & (byte)0x01);
+        byte vx = registers.getVAtAddress(x);
         int uSign_vx = byteToUnsignedInt(vx);
 
         registers.setVAtAddress(0xF, lsb);
-        registers.setVAtAddress(getX(), (byte)(uSign_vx >>> 1));
+        registers.setVAtAddress(x, (byte)(uSign_vx >>> 1));
     }
 
     ///8XY7
     ///If Vy > Vx, then VF is set to 1, otherwise 0. Then Vx is subtracted from Vy, and the results stored in Vx
-    private void subn()
+    void subn(byte x, byte y)
     {
-        byte vx = registers.getVAtAddress(getX());
-        byte vy = registers.getVAtAddress(getY());
+        byte vx = registers.getVAtAddress(x);
+        byte vy = registers.getVAtAddress(y);
         int uSign_vx = byteToUnsignedInt(vx);
         int uSign_vy = byteToUnsignedInt(vy);
 
@@ -328,87 +426,79 @@ public class CPU {
         else { registers.setVAtAddress(0xF, (byte) 0x0); }
 
         byte result = (byte) (vx - vy);
-        registers.setVAtAddress(getX(), result);
+        registers.setVAtAddress(x, result);
     }
 
     ///8XYE
     ///If the most-significant bit of Vx is 1, then VF is set to 1, otherwise to 0. Then Vx is multiplied by 2.
-    private void shl()
+    void shl(byte x)
     {
-        byte msb = (byte)(registers.getVAtAddress(getX()) & (byte)0x80);
-        byte vx = registers.getVAtAddress(getX());
+        byte msb = (byte)(registers.getVAtAddress(x) & (byte)0x80);
+        byte vx = registers.getVAtAddress(x);
         int uSign_vx = byteToUnsignedInt(vx);
 
         if(msb != 0) { msb = (byte)0x01; }
 
         registers.setVAtAddress(0xF, msb);
-        registers.setVAtAddress(getX(), (byte)(uSign_vx << 1));
+        registers.setVAtAddress(x, (byte)(uSign_vx << 1));
     }
 
     ///9XY0
     ///The values of Vx and Vy are compared, and if they are not equal, the PC is increased by 2.
-    private void sneRegister()
+    void sneRegister(byte x, byte y)
     {
-        byte vx = registers.getVAtAddress(getX());
-        byte vy = registers.getVAtAddress(getY());
+        byte vx = registers.getVAtAddress(x);
+        byte vy = registers.getVAtAddress(y);
 
         if(vx != vy) { registers.setPC((short) (registers.getPC() + 0x2)); }
     }
 
     ///ANNN
     ///Sets I to the address NNN.
-    private void loadToI()
+    void loadToI(short nnn)
     {
-        registers.setI(getNNN());
+        registers.setI(nnn);
     }
 
     ///BNNN
     ///Jump to location NNN + V0
     //The PC is set to NNN plus the value of V0.
-    private void jumpSum()
+    void jumpSum(short nnn)
     {
         int uSign_v0 = registers.getVAtAddress(0) & 0xFF;
-        int uSign_nnn = getNNN() & 0xFFF;
+        int uSign_nnn = nnn & 0xFFF;
 
         registers.setPC((short)(uSign_nnn + uSign_v0));
     }
 
     ///CXKK
     ///Generates a random byte and ANDs it to KK. Stores the result in Vx
-    private void rand()
+    void rand(byte x, byte kk)
     {
         byte rnd = (byte)random.nextInt(256);
 
         if(!randomEnabled) { rnd = 0x4E; }
 
-        registers.setVAtAddress(getX(), (byte)(rnd & getKK()));
+        registers.setVAtAddress(x, (byte)(rnd & kk));
     }
 
     ///DXYN
     ///Display n-byte sprite starting at memory location I at (Vx, Vy), set VF = collision.
-    private void draw()
+    void draw(byte x, byte y, short n)
     {
+        int uSign_x = byteToUnsignedInt(registers.getVAtAddress(x));
+        int uSign_y = byteToUnsignedInt(registers.getVAtAddress(y));
+        short I = registers.getI();
         byte vf = 0x0;
 
-        for(byte i = 0; i < getN(); i++)
+        for(int i = 0; i < n; i++)
         {
-            byte current = memory.getMemoryAtAddress((short)(registers.getI() + i));
-
-            for(byte j = 0; j <= 7; j++)
-            {
-                int uSign_x = byteToUnsignedInt(registers.getVAtAddress(getX()));
-                int uSign_y = byteToUnsignedInt(registers.getVAtAddress(getY()));
-
-                int uSign_xFinalPos = (uSign_x + j) % 64;
-                int uSign_yFinalPos = (uSign_y + i) % 32;
+            byte current = memory.getMemoryAtAddress((short)(I + i));
 
-                boolean previousPixel = memory.getPixelAtPosition((byte)uSign_xFinalPos, (byte)uSign_yFinalPos);
-                boolean newPixel = previousPixel ^ isBitSet(current, 7-j);
+            //Sprite byte moved to the leftmost pixels then rotated in place, wrapping around the right edge
+            long spriteRow = Long.rotateRight((current & 0xFFL) << 56, uSign_x);
 
-                memory.setPixelAtPosition((byte)uSign_xFinalPos, (byte)uSign_yFinalPos, newPixel);
-
-                if(previousPixel && !newPixel) { vf = 0x01; }
-            }
+            if(memory.xorScreenRow((uSign_y + i) % Utils.SCREEN_HEIGHT, spriteRow)) { vf = 0x01; }
         }
 
         registers.setVAtAddress(0xF, vf);
@@ -416,65 +506,73 @@ public class CPU {
 
     ///EX9E
     ///Skip next instruction if key with the value of Vx is pressed.
-    private void skipIfPressed()
+    void skipIfPressed(byte x)
     {
-        int vx = registers.getVAtAddress(getX());
+        int vx = registers.getVAtAddress(x);
         if(keyboard.getCurrentKeyPressed() == vx) { registers.setPC((short) (registers.getPC() + 2)); }
     }
 
     ///EXA1
     ///Skip next instruction if key with the value of Vx is not pressed
-    private void skipIfNotPressed()
+    void skipIfNotPressed(byte x)
     {
-        int vx = registers.getVAtAddress(getX());
+        int vx = registers.getVAtAddress(x);
         if(keyboard.getCurrentKeyPressed() != vx) { registers.setPC((short) (registers.getPC() + 2)); }
     }
 
     ///FX07
     ///The value of DT is placed into Vx.
-    private void loadDTOnRegister()
+    void loadDTOnRegister(byte x)
     {
-        registers.setVAtAddress(getX(), registers.getDT());
+        registers.setVAtAddress(x, registers.getDT());
     }
 
     ///FX0A
     ///Wait for a key press, store the value of the key in Vx.
-    private void getKeyPress()
+    ///An input that can't block points the PC back at this instruction so it runs again until a key comes.
+    void getKeyPress(byte x)
     {
-        registers.setVAtAddress(getX(), (byte)keyboard.keyboardInterrupt());
+        int key = keyboard.waitForKeyPress();
+        if(key == -1)
+        {
+            registers.setPC((short)(registers.getPC() - 2));
+            return;
+        }
+
+        registers.setVAtAddress(x, (byte)key);
     }
 
     ///FX15
     ///DT is set equal to the value of Vx.
-    private void loadRegisterOnDT()
+    void loadRegisterOnDT(byte x)
     {
-        byte vx = registers.getVAtAddress(getX());
+        byte vx = registers.getVAtAddress(x);
 
         registers.setDT(vx);
     }
 
     ///FX18
     ///ST is set equal to the value of Vx.
-    private void loadRegisterOnST()
+    void loadRegisterOnST(byte x)
     {
-        byte vx = registers.getVAtAddress(getX());
+        byte vx = registers.getVAtAddress(x);
 
         registers.setST(vx);
     }
 
     ///FX29
     ///Set I = location of sprite for digit Vx.
-    private void loadHexSpriteToI()
+    void loadHexSpriteToI(byte x)
     {
-        short address = (short)(Utils.SPRITES_STORAGE_STARTING_ADDRESS + (registers.getVAtAddress(getX()) * 5));
+        short address = (short)(Utils.SPRITES_STORAGE_STARTING_ADDRESS + (registers.getVAtAddress(x) * 5));
         registers.setI(address);
     }
 
     ///FX1E
     ///ST is set equal to the value of Vx.
-    private void addRegisterToI()
+    void addRegisterToI(byte x)
     {
-        byte vx = registers.getVAtAddress(getX());
+        byte vx = registers.getVAtAddress(x);
 
         registers.setI((short) ((registers.getI() & 0xFFFF) + byteToUnsignedInt(vx)));
     }
@@ -482,9 +580,9 @@ public class CPU {
     ///FX33
     ///Store BCD representation of Vx in memory locations I, I+1, and I+2
     ///Taken from ismael rodriguez's implementation
-    private void loadVXasBCDtoMemory()
+    void loadVXasBCDtoMemory(byte x)
     {
-        byte vx = registers.getVAtAddress(getX());
+        byte vx = registers.getVAtAddress(x);
         int uSign_vx = vx & 0xFF;
 
         int hundreds = uSign_vx / 100;
@@ -502,9 +600,9 @@ public class CPU {
 
     ///FX55
     ///Store registers V0 through Vx in memory starting at location I
-    private void loadMultipleRegistersToMemory()
+    void loadMultipleRegistersToMemory(byte x)
     {
-        for(byte reg = 0; reg <= getX(); reg++)
+        for(byte reg = 0; reg <= x; reg++)
         {
             short address = (short)(registers.getI() + reg);
             byte value = registers.getVAtAddress(reg);
@@ -514,9 +612,9 @@ public class CPU {
 
     ///FX65
     ///Read registers V0 through Vx from memory starting at location I
-    private void loadMemoryToRegisters()
+    void loadMemoryToRegisters(byte x)
     {
-        for(byte reg = 0; reg <= getX(); reg++){
+        for(byte reg = 0; reg <= x; reg++){
             byte value = memory.getMemoryAtAddress((short) (registers.getI() + reg));
             registers.setVAtAddress(reg, value);
         }
@@ -0,0 +1,149 @@
+package chip8;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+///Attributes executed instructions to the emulated call stack and writes them out as collapsed stacks,
+///one "main;0x2A4;0x31C count" line per call path, ready for flamegraph.pl or speedscope.
+///The real stack pointer is the stack depth, so a shadow stack indexed by SP holds the call path node of every level:
+///a 2NNN raises SP and opens a child of the level below for the function it lands on, a 00EE lowers it again.
+///Following SP rather than pairing calls with returns keeps it right after a rewind or a state load moved the stack.
+///Call paths are nodes of a tree in preallocated arrays, found again through an open addressing table,
+///so recording allocates nothing. Calls past the node capacity are charged to their caller.
+///Enabled like Profiler, Machine only hands instructions over while it's on.
+public class CallGraphProfiler {
+    private static final int MAX_NODES = 1 << 14;
+    private static final int TABLE_SIZE = MAX_NODES * 2;
+    private static final int ROOT = 0;
+    private static final String ROOT_NAME = "main";
+
+    private final int[] parents = new int[MAX_NODES];
+    private final short[] functions = new short[MAX_NODES];
+    private final long[] counts = new long[MAX_NODES];     /* Instructions run in the node itself, not in its callees */
+    private final int[] table = new int[TABLE_SIZE];       /* Node + 1 by (parent, function), 0 when empty */
+    private int nodeCount = 1;
+    private long droppedCalls;
+
+    private final int[] shadowStack = new int[Utils.STACK_SIZE];
+
+    //Flipped from the UI while the machine runs
+    private volatile boolean enabled;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean value) { enabled = value; }
+
+    public long getDroppedCalls() { return droppedCalls; }
+
+    ///Called by Machine after each instruction while enabled, with SP before and after it and the PC it left
+    void record(int depthBefore, int depthAfter, short PC)
+    {
+        counts[shadowStack[level(depthBefore)]]++;
+
+        if(depthAfter > depthBefore)
+        {
+            int level = level(depthAfter);
+            shadowStack[level] = level == 0 ? ROOT : child(shadowStack[level - 1], PC);
+        }
+    }
+
+    //SP leaves the stack when a rom returns more than it called, the instruction after that throws
+    private static int level(int depth) { return Math.max(0, Math.min(depth, Utils.STACK_SIZE - 1)); }
+
+    private int child(int parent, short function)
+    {
+        int key = parent << 12 | (function & (Utils.MEMORY_SIZE - 1));
+        int slot = (key * 0x9E3779B1) >>> (32 - Integer.numberOfTrailingZeros(TABLE_SIZE));
+
+        while(table[slot] != 0)
+        {
+            int node = table[slot] - 1;
+            if(parents[node] == parent && functions[node] == function) { return node; }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+
+        if(nodeCount == MAX_NODES)
+        {
+            droppedCalls++;
+            return parent;
+        }
+
+        int node = nodeCount++;
+        parents[node] = parent;
+        functions[node] = function;
+        table[slot] = node + 1;
+
+        return node;
+    }
+
+    public void reset()
+    {
+        for(int node = 0; node < nodeCount; node++) { counts[node] = 0; }
+        for(int slot = 0; slot < TABLE_SIZE; slot++) { table[slot] = 0; }
+        for(int level = 0; level < shadowStack.length; level++) { shadowStack[level] = ROOT; }
+        nodeCount = 1;
+        droppedCalls = 0;
+    }
+
+    ///Instructions run in the function reached through the given calls from main, its callees not included
+    public long getSelfCount(int... calls)
+    {
+        int node = ROOT;
+        for(int function : calls)
+        {
+            node = find(node, (short) function);
+            if(node < 0) { return 0; }
+        }
+
+        return counts[node];
+    }
+
+    private int find(int parent, short function)
+    {
+        for(int node = 1; node < nodeCount; node++)
+        {
+            if(parents[node] == parent && functions[node] == function) { return node; }
+        }
+
+        return -1;
+    }
+
+    //region OUTPUT
+
+    ///One line per call path that ran anything, frames separated by semicolons and the instruction count last
+    public void writeCollapsed(PrintStream out)
+    {
+        StringBuilder line = new StringBuilder();
+        for(int node = 0; node < nodeCount; node++)
+        {
+            if(counts[node] == 0) { continue; }
+
+            line.setLength(0);
+            appendPath(line, node);
+            out.append(line).append(' ').println(counts[node]);
+        }
+    }
+
+    private void appendPath(StringBuilder line, int node)
+    {
+        if(node == ROOT)
+        {
+            line.append(ROOT_NAME);
+            return;
+        }
+
+        appendPath(line, parents[node]);
+        line.append(String.format(";0x%03X", functions[node]));
+    }
+
+    public void dump(Path path) throws IOException
+    {
+        try(PrintStream out = new PrintStream(Files.newOutputStream(path)))
+        {
+            writeCollapsed(out);
+        }
+    }
+
+    //endregion
+}
@@ -1,168 +1,206 @@
 package chip8;
 
-import javax.swing.*;
-import javax.swing.border.Border;
-import java.awt.*;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.logging.Logger;
 
+///Runs a Machine in real time. Everything it shows, plays or reads goes through the FrameSink, AudioSink
+///and InputSource it is given, so it runs the same with or without Swing.
+///Wall time only decides when frames run. DT and ST tick on the Machine's virtual clock, once every
+///CPU_FREQUENCY / FRAME_RATE emulated instructions, so fast forward and uncapped runs see the same timers as 1x.
 public class Chip8 {
-    private Registers registers;
-    private Memory memory;
-    private CPU cpu;
-    private Display display;
-    private DebugPanel debugPanel;
-    private Keyboard keyboard;
-    private Sound sound;
+    private Machine machine;
+    private InputSource input;
+    private FrameSink frameSink = FrameSink.NONE;
+    private RewindBuffer rewindBuffer = new RewindBuffer();
+    private ReverseDebugger reverseDebugger;
 
-    private static final Logger LOGGER = Logger.getLogger(Chip8.class.getName());
+    private volatile boolean running;
+    private volatile Thread emulationThread;
+    private volatile long achievedFrequency;
 
-    private boolean running;
+    private static final Logger LOGGER = Logger.getLogger(Chip8.class.getName());
 
-    public Chip8()
+    public Chip8(InputSource input)
     {
-        try
-        {
-            init();
-            loadRom("games/Pong (1 player).ch8");
-            emulationLoop();
-        }
-        catch (Exception err)
-        {
-            err.printStackTrace();
-        }
+        this.input = input;
+        reverseDebugger = new ReverseDebugger(input);
+        machine = new Machine(reverseDebugger);
+        reverseDebugger.reset(machine);
     }
 
-    private void init()
-    {
-        registers = new Registers();
-        memory = new Memory();
-        keyboard = new Keyboard();
-        sound = new Sound();
-        cpu = new CPU(memory, registers, keyboard);
-        createDisplay();
+    public Machine getMachine() { return machine; }
+    public Registers getRegisters() { return machine.getRegisters(); }
+    public Memory getMemory() { return machine.getMemory(); }
+    public CPU getCpu() { return machine.getCpu(); }
+    public RewindBuffer getRewindBuffer() { return rewindBuffer; }
+    public ReverseDebugger getReverseDebugger() { return reverseDebugger; }
 
-        running = true;
+    public void setFrameSink(FrameSink value)
+    {
+        frameSink = value;
+        machine.setFrameSink(value);
     }
 
-    private void createDisplay()
+    public void setAudioSink(AudioSink value) { machine.setAudioSink(value); }
+
+    ///Emulated instructions per second measured over the last second of wall time
+    public long getAchievedFrequency() { return achievedFrequency; }
+
+    ///Makes the emulation loop return after the current frame, or right away when it is paused
+    public void stop()
     {
-        display = new Display(memory);
-        debugPanel = new DebugPanel(memory, registers, keyboard, cpu);
+        running = false;
 
-        Window window = new Window("Chip8", display, debugPanel);
-        window.addKeyListener(keyboard);
-        window.setVisible(true);
+        Thread thread = emulationThread;
+        if(thread != null) { thread.interrupt(); }
     }
 
     public void loadRom(String title) throws IOException
     {
-        File file = new File(Utils.ROMS_PATH + title);
-        byte[] bytes = Files.readAllBytes(file.toPath());
-        short currentAddress = Utils.FIRST_PROGRAM_SPACE_ADDRESS;
-
-        for (byte b : bytes)
-        {
-            memory.setMemoryAtAddress(currentAddress, b);
-            currentAddress += 0x1;
-        }
-
-        LOGGER.info("Successfully loaded rom");
+        machine.loadRom(title);
+        rewindBuffer.clear();
+        reverseDebugger.reset(machine);
     }
 
-    public void emulationLoop() throws InterruptedException
+    public void loadRom(byte[] bytes)
     {
-        long startTime;
-        long endTime;
-        long passedTime = 0;
+        machine.loadRom(bytes);
+        rewindBuffer.clear();
+        reverseDebugger.reset(machine);
+    }
 
-        int emulatedCycles = 0;
-        int refreshCycles = 0;
+    public void emulationLoop()
+    {
+        running = true;
+        emulationThread = Thread.currentThread();
+        FrameScheduler scheduler = new FrameScheduler(Utils.CPU_FREQUENCY);
+        long measureStart = System.nanoTime();
+        long measureStartCycles = machine.getCycleCount();
+        long lastPresentation = 0;
 
         while(running)
         {
-            if(!keyboard.isStepModeActive())
+            if(input.isRewindHeld() && !input.isStepModeActive())
             {
-                startTime = System.nanoTime();
-
-                emulateCycle(debugPanel);
-
-                if(refreshCycles % Utils.CYCLES_FOR_REFRESHING == 0)
+                //Back one recorded frame per displayed frame, whatever the speed setting
+                if(rewindBuffer.rewind(machine))
                 {
-                    refreshCycles = 0;
-
-                    display.paintScreen();
-                    registers.setDT((byte) (registers.getDT() - 0x01));
+                    //The debugger's history can't follow a jump it didn't make
+                    reverseDebugger.reset(machine);
+                    frameSink.presentFrame();
+                }
+                scheduler.waitForNextFrame();
+            }
+            else if(!input.isStepModeActive())
+            {
+                EmulationSpeed speed = input.getSpeed();
+                int frames = speed.isUncapped() ? 1 : speed.getFramesPerTick();
 
-                    if(registers.getDT() > 0)
+                for(int frame = 0; frame < frames; frame++)
+                {
+                    if(!emulateFrame())
                     {
-                        registers.setDT((byte) (registers.getDT() - 0x01));
+                        //Stopped in front of a breakpoint, pause there
+                        LOGGER.info("Paused on " + machine.getBreakReason());
+                        input.setStepModeActive(true);
+                        frameSink.presentDebug();
+                        break;
                     }
+                }
 
-                    if(registers.getST() > 0)
+                long now = System.nanoTime();
+                if(speed.isUncapped())
+                {
+                    //Only present at the display's own rate, rendering must not cap the throughput
+                    if(now - lastPresentation >= Utils.NANOSECONDS_PER_SECOND / Utils.FRAME_RATE)
                     {
-                        sound.playSound();
-                        registers.setST((byte) (registers.getST() - 0x01));
-                        if(registers.getST() == 0)
-                        {
-                            sound.stopSound();
-                        }
+                        rewindBuffer.record(machine);
+                        frameSink.presentFrame();
+                        lastPresentation = now;
                     }
                 }
+                else
+                {
+                    //One snapshot per displayed frame, rewinding goes back through what the player saw
+                    rewindBuffer.record(machine);
+                    frameSink.presentFrame();
+                    scheduler.waitForNextFrame();
+                }
 
-                endTime = System.nanoTime();
-                refreshCycles++;
-
-                waitForEndOfCycle(startTime, endTime);
+                if(now - measureStart >= Utils.NANOSECONDS_PER_SECOND)
+                {
+                    long cycles = machine.getCycleCount();
+                    achievedFrequency = (cycles - measureStartCycles) * Utils.NANOSECONDS_PER_SECOND / (now - measureStart);
+                    frameSink.presentSpeed(speed, achievedFrequency);
+                    measureStart = now;
+                    measureStartCycles = cycles;
+                }
             }
             else
             {
-                if(keyboard.nextInstructionPressed == false)
+                if(input.consumeNextInstruction())
+                {
+                    emulateCycle();
+                    frameSink.presentFrame();
+                }
+                else if(input.consumePreviousInstruction())
                 {
-                    Thread.sleep(0);
+                    stepBack();
+                    frameSink.presentFrame();
+                    frameSink.presentDebug();
                 }
                 else
                 {
-                    emulateCycle(debugPanel);
-
-                    display.paintScreen();
-                    registers.setDT((byte) (registers.getDT() - 0x01));
-
-                    keyboard.nextInstructionPressed = false;
+                    try
+                    {
+                        input.awaitStepCommand();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        //stop() wakes a paused loop up this way
+                    }
                 }
+
+                //Don't try to catch up on the time spent stepping
+                scheduler.restart();
             }
         }
     }
 
-    private void waitForEndOfCycle(long startTime, long endTime)
+    //Returns false when a breakpoint stopped the frame
+    private boolean emulateFrame()
     {
-        long nanosecondsToWait = Utils.PERIOD_NANOSECONDS - (endTime - startTime);
-        long initNanoseconds = System.nanoTime();
-        long targetNanoseconds = initNanoseconds + nanosecondsToWait;
-        while(System.nanoTime() < targetNanoseconds)
+        try
         {
-            try
-            {
-                Thread.sleep(0);
-            } catch (InterruptedException e)
-            {
-                e.printStackTrace();
-            }
+            machine.runFrame();
+            reverseDebugger.onFrame();
+        }
+        catch(Exception e)
+        {
+            //Whatever is left of the frame runs on the next call
+            e.printStackTrace();
         }
+
+        return machine.getBreakReason() == null;
     }
 
-    private void emulateCycle(DebugPanel debugPanel)
+    private void stepBack()
     {
         try
         {
-            cpu.fetchOpcode();
-            debugPanel.paintScreen();
-            cpu.incrementPC();
-            cpu.decodeAndRunOpcode();
-            debugPanel.paintScreen();
+            reverseDebugger.stepBack();
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
 
+    private void emulateCycle()
+    {
+        try
+        {
+            machine.step();
         }
         catch(Exception e)
         {
@@ -0,0 +1,8 @@
+package chip8;
+
+///Implemented by the hidden classes BlockCompiler generates out of a basic block.
+///Runs the block from its first instruction and returns the number of instructions retired, never more than the budget,
+///leaving the PC on the next instruction to run. Returns 0 when the first instruction doesn't fit in the budget.
+interface CompiledBlock {
+    int run(CPU cpu, Registers registers, BasicBlock block, int budget);
+}
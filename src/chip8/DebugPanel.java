@@ -2,23 +2,83 @@ package chip8;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.HierarchyEvent;
 
+///Registers, current opcode, key and speed, refreshed at most once per display frame.
+///A Swing timer asks for a snapshot, the emulation thread copies the registers at its next presentDebug and the timer
+///formats them on the EDT. While the panel isn't showing the timer is stopped, nothing is asked for, and presentDebug
+///is a single volatile read. Text is formatted into char arrays kept from paint to paint with one cached font.
 public class DebugPanel extends JPanel {
-    private Graphics graphics;
+    private static final Font FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final int REFRESH_MILLISECONDS = 1000 / Utils.FRAME_RATE;
+    //Ticks without a snapshot after which the emulation is taken to be paused and read directly
+    private static final int IDLE_TICKS = 3;
+
+    private static final int IDLE = 0;
+    private static final int REQUESTED = 1;
+    private static final int READY = 2;
+
     private int width = Utils.DEBUG_PANEL_WIDTH;
     private int height = Utils.DEBUG_PANEL_HEIGHT;
 
     private Memory memory;
     private Registers registers;
-    private Keyboard keyboard;
+    private InputSource keyboard;
     private CPU cpu;
 
-    public DebugPanel(Memory memory, Registers registers, Keyboard keyboard, CPU cpu)
+    private volatile EmulationSpeed speed = EmulationSpeed.NORMAL;
+    private volatile long achievedFrequency;
+
+    //Written by the emulation thread while REQUESTED, read by the EDT once READY
+    private volatile int snapshotState = IDLE;
+    private final byte[] snapshotV = new byte[16];
+    private short snapshotPC;
+    private short snapshotI;
+    private byte snapshotDT;
+    private byte snapshotST;
+    private short snapshotOpcode;
+    private int pendingTicks;
+    private final byte[] directV = new byte[16];
+
+    private final Timer refreshTimer;
+
+    //Lines drawn as they are, labels filled in once and values overwritten in place
+    private final char[] opcodeLine = "Current opcode: 0x0000".toCharArray();
+    private final char[] pcLine = "PC: 0x0000".toCharArray();
+    private final char[] iLine = "I:  0x0000".toCharArray();
+    private final char[] dtLine = "DT:  0x0000".toCharArray();
+    private final char[] stLine = "ST:  0x0000".toCharArray();
+    private final char[][] vLines = new char[16][];
+    private final char[] keyLine = "Pressed key: -00".toCharArray();
+    private int keyLength;
+    private final char[] speedLine = new char[64];
+    private int speedLength;
+
+    public DebugPanel(Memory memory, Registers registers, InputSource keyboard, CPU cpu)
     {
         this.memory = memory;
         this.registers = registers;
         this.keyboard = keyboard;
         this.cpu = cpu;
+
+        for(int i = 0; i < vLines.length; i++)
+        {
+            vLines[i] = ("V" + Character.toUpperCase(Character.forDigit(i, 16)) + ":  0x0000").toCharArray();
+        }
+
+        setBackground(GuiUtils.WINDOW_COLOR);
+
+        refreshTimer = new Timer(REFRESH_MILLISECONDS, e -> refresh());
+        addHierarchyListener(e -> {
+            if((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0) { return; }
+
+            if(isShowing()) { refreshTimer.start(); }
+            else
+            {
+                refreshTimer.stop();
+                snapshotState = IDLE;
+            }
+        });
     }
 
     @Override
@@ -27,63 +87,137 @@ public class DebugPanel extends JPanel {
         return new Dimension(width, height);
     }
 
+    ///Called from the emulation thread after every block, copies the registers only when the EDT asked for them
     public void paintScreen()
     {
+        if(snapshotState != REQUESTED) { return; }
+
+        for(int i = 0; i < snapshotV.length; i++) { snapshotV[i] = registers.getVAtAddress(i); }
+        snapshotPC = registers.getPC();
+        snapshotI = registers.getI();
+        snapshotDT = registers.getDT();
+        snapshotST = registers.getST();
+        snapshotOpcode = cpu.getCurrentOpcode();
+
+        snapshotState = READY;
+    }
+
+    public void setSpeed(EmulationSpeed speed, long achievedFrequency)
+    {
+        this.speed = speed;
+        this.achievedFrequency = achievedFrequency;
+    }
+
+    //region FORMATTING
+
+    //On the EDT, once per timer tick
+    private void refresh()
+    {
+        if(snapshotState == READY)
+        {
+            format(snapshotPC, snapshotI, snapshotDT, snapshotST, snapshotOpcode, snapshotV);
+            pendingTicks = 0;
+        }
+        else if(snapshotState == REQUESTED && ++pendingTicks >= IDLE_TICKS)
+        {
+            //Paused or waiting on a key, nothing is changing the registers
+            for(int i = 0; i < directV.length; i++) { directV[i] = registers.getVAtAddress(i); }
+            format(registers.getPC(), registers.getI(), registers.getDT(), registers.getST(), cpu.getCurrentOpcode(), directV);
+        }
+        else if(snapshotState == IDLE)
+        {
+            snapshotState = REQUESTED;
+            return;
+        }
+        else { return; }
+
+        formatKeyAndSpeed();
+        snapshotState = REQUESTED;
         repaint();
     }
 
-    ///TODO: Replace those with JLabels
-    public void paintCurrentOpcode()
+    private void format(short PC, short I, byte DT, byte ST, short opcode, byte[] V)
     {
-        String opcode = String.format("0x%04X", cpu.getCurrentOpcode());
-        graphics.setColor(Color.WHITE);
-        graphics.setFont(new Font("Arial", 0, 14));
-        graphics.drawString("Current opcode: " + opcode, 20, 20);
+        for(int i = 0; i < vLines.length; i++) { putHex(vLines[i], 7, V[i] & 0xFF, 4); }
+        putHex(pcLine, 6, PC & 0xFFFF, 4);
+        putHex(iLine, 6, I & 0xFFFF, 4);
+        putHex(dtLine, 7, DT & 0xFF, 4);
+        putHex(stLine, 7, ST & 0xFF, 4);
+        putHex(opcodeLine, 18, opcode & 0xFFFF, 4);
     }
 
-    public void paintRegisters()
+    private void formatKeyAndSpeed()
     {
-        String[] nonVRegs = new String[]{ "PC: " + String.format("0x%04X", registers.getPC()),
-                "I:  " + String.format("0x%04X", registers.getI()),
-                "DT:  " + String.format("0x%04X", registers.getDT()),
-                "ST:  " + String.format("0x%04X", registers.getST()) };
+        keyLength = putDecimal(keyLine, 13, keyboard.getCurrentKeyPressed());
 
-        graphics.setColor(Color.WHITE);
-        graphics.setFont(new Font("Arial", 0, 14));
+        speedLength = putText(speedLine, 0, "Speed: ");
+        speedLength = putText(speedLine, speedLength, speed.toString());
+        speedLength = putText(speedLine, speedLength, " (");
+        speedLength = putDecimal(speedLine, speedLength, achievedFrequency);
+        speedLength = putText(speedLine, speedLength, " Hz)");
+    }
 
-        graphics.drawString(nonVRegs[0], 20, 60);
-        graphics.drawString(nonVRegs[1], 120, 60);
-        graphics.drawString(nonVRegs[2], 20, 80);
-        graphics.drawString(nonVRegs[3], 120, 80);
+    private static void putHex(char[] line, int offset, int value, int digits)
+    {
+        for(int i = digits - 1; i >= 0; i--)
+        {
+            line[offset + i] = Character.toUpperCase(Character.forDigit(value & 0xF, 16));
+            value >>>= 4;
+        }
+    }
 
-        int currentReg = 0;
-        for(int x = 0; x < 4; x++)
+    //Returns the offset after the number
+    private static int putDecimal(char[] line, int offset, long value)
+    {
+        if(value < 0)
         {
-            for(int y = 0; y < 4; y++)
-            {
-                String text = "V" + String.format("%01X", currentReg) + ":  " + String.format("0x%04X", registers.getVAtAddress(currentReg));
-                graphics.drawString(text, x * 100 + 230, y * 20 + 20);
+            line[offset++] = '-';
+            value = -value;
+        }
 
-                currentReg++;
-            }
+        int digits = 1;
+        for(long rest = value / 10; rest > 0; rest /= 10) { digits++; }
+        if(offset + digits > line.length) { return offset; }
+
+        for(int i = digits - 1; i >= 0; i--)
+        {
+            line[offset + i] = (char)('0' + value % 10);
+            value /= 10;
         }
+
+        return offset + digits;
     }
 
-    public void paintKeyboardInput()
+    private static int putText(char[] line, int offset, String text)
     {
-        graphics.drawString("Pressed key: " + keyboard.getCurrentKeyPressed(), 20, 120);
-        //graphics.drawString("Last key pressed: " + keyboard.getLastPressed(), 150, 120);
+        int length = Math.min(text.length(), line.length - offset);
+        text.getChars(0, length, line, offset);
+
+        return offset + length;
     }
 
+    //endregion
+
     @Override
     public void paintComponent(Graphics graphics)
     {
         super.paintComponent(graphics);
-        this.graphics = graphics;
-        this.setBackground(Utils.WINDOW_COLOR);
 
-        paintCurrentOpcode();
-        paintRegisters();
-        paintKeyboardInput();
+        graphics.setColor(Color.WHITE);
+        graphics.setFont(FONT);
+
+        graphics.drawChars(opcodeLine, 0, opcodeLine.length, 20, 20);
+        graphics.drawChars(pcLine, 0, pcLine.length, 20, 60);
+        graphics.drawChars(iLine, 0, iLine.length, 120, 60);
+        graphics.drawChars(dtLine, 0, dtLine.length, 20, 80);
+        graphics.drawChars(stLine, 0, stLine.length, 120, 80);
+
+        for(int i = 0; i < vLines.length; i++)
+        {
+            graphics.drawChars(vLines[i], 0, vLines[i].length, (i / 4) * 100 + 230, (i % 4) * 20 + 20);
+        }
+
+        graphics.drawChars(keyLine, 0, keyLength, 20, 120);
+        graphics.drawChars(speedLine, 0, speedLength, 120, 120);
     }
 }
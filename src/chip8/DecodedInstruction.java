@@ -0,0 +1,211 @@
+package chip8;
+
+///An opcode resolved once into a handler kind with its operands already extracted.
+///Superinstructions fuse two consecutive opcodes, the operands of the second one are kept in the *2 fields.
+public class DecodedInstruction {
+    //Single instructions, kept contiguous so the dispatch compiles to a table switch
+    public static final int NOP = 0;
+    public static final int CLS = 1;
+    public static final int RET = 2;
+    public static final int JUMP = 3;
+    public static final int CALL = 4;
+    public static final int SKIP_EQUAL_BYTE = 5;
+    public static final int SKIP_NOT_EQUAL_BYTE = 6;
+    public static final int SKIP_EQUAL_REGISTER = 7;
+    public static final int LOAD_BYTE = 8;
+    public static final int ADD_BYTE = 9;
+    public static final int LOAD_REGISTER = 10;
+    public static final int OR = 11;
+    public static final int AND = 12;
+    public static final int XOR = 13;
+    public static final int ADD_CARRY = 14;
+    public static final int SUB = 15;
+    public static final int SHR = 16;
+    public static final int SUBN = 17;
+    public static final int SHL = 18;
+    public static final int SKIP_NOT_EQUAL_REGISTER = 19;
+    public static final int LOAD_I = 20;
+    public static final int JUMP_V0 = 21;
+    public static final int RAND = 22;
+    public static final int DRAW = 23;
+    public static final int SKIP_PRESSED = 24;
+    public static final int SKIP_NOT_PRESSED = 25;
+    public static final int LOAD_DT_TO_REGISTER = 26;
+    public static final int WAIT_KEY = 27;
+    public static final int LOAD_REGISTER_TO_DT = 28;
+    public static final int LOAD_REGISTER_TO_ST = 29;
+    public static final int ADD_I = 30;
+    public static final int LOAD_HEX_SPRITE = 31;
+    public static final int BCD = 32;
+    public static final int STORE_REGISTERS = 33;
+    public static final int READ_REGISTERS = 34;
+
+    //Superinstructions
+    public static final int LOAD_I_DRAW = 35;           //ANNN DXYN
+    public static final int LOAD_I_READ_REGISTERS = 36; //ANNN FX65
+    public static final int ADD_SKIP_EQUAL = 37;        //7XKK 3XKK
+    public static final int ADD_SKIP_NOT_EQUAL = 38;    //7XKK 4XKK
+
+    final int kind;
+    final short opcode;
+    final int length; //Number of CHIP-8 instructions covered
+
+    final byte x;
+    final byte y;
+    final short n;
+    final byte kk;
+    final short nnn;
+
+    final byte x2;
+    final byte y2;
+    final short n2;
+    final byte kk2;
+
+    private DecodedInstruction(int kind, short opcode)
+    {
+        this.kind = kind;
+        this.opcode = opcode;
+        this.length = 1;
+
+        this.x = (byte)((opcode & 0x0F00) >> 8);
+        this.y = (byte)((opcode & 0x00F0) >> 4);
+        this.n = (short)(opcode & 0x000F);
+        this.kk = (byte)(opcode & 0x00FF);
+        this.nnn = (short)(opcode & 0x0FFF);
+
+        this.x2 = 0;
+        this.y2 = 0;
+        this.n2 = 0;
+        this.kk2 = 0;
+    }
+
+    private DecodedInstruction(int kind, DecodedInstruction first, DecodedInstruction second)
+    {
+        this.kind = kind;
+        this.opcode = first.opcode;
+        this.length = 2;
+
+        this.x = first.x;
+        this.y = first.y;
+        this.n = first.n;
+        this.kk = first.kk;
+        this.nnn = first.nnn;
+
+        this.x2 = second.x;
+        this.y2 = second.y;
+        this.n2 = second.n;
+        this.kk2 = second.kk;
+    }
+
+    public int getKind() { return kind; }
+    public short getOpcode() { return opcode; }
+    public int getLength() { return length; }
+
+    ///Jumps, calls, returns, skips and key waits are the only instructions that read or change the PC
+    public boolean endsBasicBlock()
+    {
+        switch(kind)
+        {
+            case JUMP:
+            case CALL:
+            case RET:
+            case JUMP_V0:
+            case SKIP_EQUAL_BYTE:
+            case SKIP_NOT_EQUAL_BYTE:
+            case SKIP_EQUAL_REGISTER:
+            case SKIP_NOT_EQUAL_REGISTER:
+            case SKIP_PRESSED:
+            case SKIP_NOT_PRESSED:
+            case ADD_SKIP_EQUAL:
+            case ADD_SKIP_NOT_EQUAL:
+            case WAIT_KEY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    ///Resolves an opcode the same way CPU.decodeAndRunOpcode does. Unknown sub-opcodes become NOPs like they are there.
+    public static DecodedInstruction decode(short opcode)
+    {
+        return new DecodedInstruction(kindOf(opcode), opcode);
+    }
+
+    ///The handler kind of a single opcode, NOP for the ones that do nothing
+    public static int kindOf(short opcode)
+    {
+        int lastDigit = opcode & 0x000F;
+        int lastTwoDigits = opcode & 0x00FF;
+
+        switch((opcode & 0xF000) >> 12)
+        {
+            case 0x0:
+                if(lastDigit == 0x0) { return CLS; }
+                if(lastDigit == 0xE) { return RET; }
+                return NOP;
+            case 0x1: return JUMP;
+            case 0x2: return CALL;
+            case 0x3: return SKIP_EQUAL_BYTE;
+            case 0x4: return SKIP_NOT_EQUAL_BYTE;
+            case 0x5: return SKIP_EQUAL_REGISTER;
+            case 0x6: return LOAD_BYTE;
+            case 0x7: return ADD_BYTE;
+            case 0x8:
+                switch(lastDigit)
+                {
+                    case 0x0: return LOAD_REGISTER;
+                    case 0x1: return OR;
+                    case 0x2: return AND;
+                    case 0x3: return XOR;
+                    case 0x4: return ADD_CARRY;
+                    case 0x5: return SUB;
+                    case 0x6: return SHR;
+                    case 0x7: return SUBN;
+                    case 0xE: return SHL;
+                    default: return NOP;
+                }
+            case 0x9: return SKIP_NOT_EQUAL_REGISTER;
+            case 0xA: return LOAD_I;
+            case 0xB: return JUMP_V0;
+            case 0xC: return RAND;
+            case 0xD: return DRAW;
+            case 0xE:
+                if(lastTwoDigits == 0x9E) { return SKIP_PRESSED; }
+                if(lastTwoDigits == 0xA1) { return SKIP_NOT_PRESSED; }
+                return NOP;
+            default:
+                switch(lastTwoDigits)
+                {
+                    case 0x07: return LOAD_DT_TO_REGISTER;
+                    case 0x0A: return WAIT_KEY;
+                    case 0x15: return LOAD_REGISTER_TO_DT;
+                    case 0x18: return LOAD_REGISTER_TO_ST;
+                    case 0x1E: return ADD_I;
+                    case 0x29: return LOAD_HEX_SPRITE;
+                    case 0x33: return BCD;
+                    case 0x55: return STORE_REGISTERS;
+                    case 0x65: return READ_REGISTERS;
+                    default: return NOP;
+                }
+        }
+    }
+
+    ///Returns the superinstruction covering both instructions, or null if the pair can't be fused.
+    ///Only pairs where the first instruction neither jumps nor writes memory are fused,
+    ///so running them back to back is always equivalent to running them one at a time.
+    public static DecodedInstruction fuse(DecodedInstruction first, DecodedInstruction second)
+    {
+        if(first.kind == LOAD_I)
+        {
+            if(second.kind == DRAW) { return new DecodedInstruction(LOAD_I_DRAW, first, second); }
+            if(second.kind == READ_REGISTERS) { return new DecodedInstruction(LOAD_I_READ_REGISTERS, first, second); }
+        }
+        else if(first.kind == ADD_BYTE)
+        {
+            if(second.kind == SKIP_EQUAL_BYTE) { return new DecodedInstruction(ADD_SKIP_EQUAL, first, second); }
+            if(second.kind == SKIP_NOT_EQUAL_BYTE) { return new DecodedInstruction(ADD_SKIP_NOT_EQUAL, first, second); }
+        }
+
+        return null;
+    }
+}
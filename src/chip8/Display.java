@@ -2,17 +2,63 @@ package chip8;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.locks.LockSupport;
 
+///Frames are handed from the emulation thread to a dedicated render thread through a triple buffer,
+///so a slow paint never holds up the emulator and the emulator never writes a frame while it's being drawn.
+///The render thread turns the changed rows into pixels and asks Swing to repaint just that rectangle, the drawing itself
+///only ever happens in paintComponent on the EDT. The render thread runs from start to close, frames published outside
+///of that are only shown on the next full repaint.
 public class Display extends JPanel {
-    private Graphics graphics;
+    private static final int ON_PIXEL = GuiUtils.ON_COLOR.getRGB();
+    private static final int OFF_PIXEL = GuiUtils.OFF_COLOR.getRGB();
+    private static final long CLOSE_WAIT_MILLISECONDS = 1000;
+
     private int width = Utils.SCREEN_WIDTH * Utils.SCREEN_SCALE;
     private int height = Utils.SCREEN_HEIGHT * Utils.SCREEN_SCALE;
 
     private Memory memory;
+    private TripleFrameBuffer frames;
+    private volatile Thread renderThread;
+
+    //Owned by the render thread
+    private long[] displayedRows = new long[Utils.SCREEN_HEIGHT];
+
+    //Unscaled frame, scaled up in a single drawImage. Guarded by itself between the render thread and the EDT
+    private BufferedImage frame;
+    private int[] framePixels;
 
     public Display(Memory memory)
     {
         this.memory = memory;
+        this.frames = new TripleFrameBuffer();
+
+        frame = new BufferedImage(Utils.SCREEN_WIDTH, Utils.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        framePixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        fillRows(0, Utils.SCREEN_HEIGHT - 1);
+    }
+
+    ///Starts the render thread, does nothing if it's already running
+    public synchronized void start()
+    {
+        if(renderThread != null) { return; }
+
+        renderThread = new Thread(this::renderLoop, "Display renderer");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    ///Stops the render thread and waits for it, so nothing keeps this display alive once its window is gone
+    public synchronized void close() throws InterruptedException
+    {
+        Thread thread = renderThread;
+        if(thread == null) { return; }
+
+        renderThread = null;
+        thread.interrupt();
+        thread.join(CLOSE_WAIT_MILLISECONDS);
     }
 
     @Override
@@ -21,40 +67,97 @@ public class Display extends JPanel {
         return new Dimension(width, height);
     }
 
-    public void setPixel(int x, int y, boolean state)
+    ///Frames published but replaced by a newer one before the render thread could show them
+    public long getDroppedFrames() { return frames.getDroppedFrames(); }
+
+    ///Called from the emulation thread, publishes the screen if it changed and returns right away
+    public void paintScreen()
+    {
+        if(memory.getDirtyRows() == 0) { return; }
+        memory.clearDirtyRegion();
+
+        frames.publish(memory);
+        LockSupport.unpark(renderThread);
+    }
+
+    private void renderLoop()
     {
-        if(state) { graphics.setColor(Utils.ON_COLOR); }
-        else { graphics.setColor(Utils.OFF_COLOR); }
+        while(!Thread.currentThread().isInterrupted())
+        {
+            long[] rows = frames.acquire();
 
-        graphics.fillRect(x * Utils.SCREEN_SCALE, y * Utils.SCREEN_SCALE, Utils.SCREEN_SCALE, Utils.SCREEN_SCALE);
+            if(rows == null) { LockSupport.park(this); }
+            else { present(rows); }
+        }
     }
 
-    private void fillScreen()
+    private void present(long[] rows)
     {
-        //Chip8 display
-        for(byte x = 0; x < Utils.SCREEN_WIDTH; x++)
+        int top = -1;
+        int bottom = -1;
+        long changedColumns = 0L;
+
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++)
         {
-            for(byte y = 0; y < Utils.SCREEN_HEIGHT; y++)
+            long changed = rows[y] ^ displayedRows[y];
+            if(changed != 0L)
             {
-                setPixel(x, y, memory.getPixelAtPosition(x, y));
+                if(top == -1) { top = y; }
+                bottom = y;
+                changedColumns |= changed;
             }
         }
+
+        if(top == -1) { return; }
+
+        System.arraycopy(rows, 0, displayedRows, 0, Utils.SCREEN_HEIGHT);
+
+        int left = Long.numberOfLeadingZeros(changedColumns);
+        int right = 63 - Long.numberOfTrailingZeros(changedColumns);
+
+        synchronized(frame)
+        {
+            fillRows(top, bottom);
+        }
+
+        //Safe from any thread, Swing coalesces the requests and paints on the EDT
+        repaint(left * Utils.SCREEN_SCALE, top * Utils.SCREEN_SCALE,
+                (right - left + 1) * Utils.SCREEN_SCALE, (bottom - top + 1) * Utils.SCREEN_SCALE);
     }
 
-    public void paintScreen()
+    private void fillRows(int top, int bottom)
     {
-        repaint();
+        for(int y = top; y <= bottom; y++)
+        {
+            long row = displayedRows[y];
+            int pixel = y * Utils.SCREEN_WIDTH;
+            for(int x = 0; x < Utils.SCREEN_WIDTH; x++)
+            {
+                framePixels[pixel++] = (row << x) < 0 ? ON_PIXEL : OFF_PIXEL;
+            }
+        }
     }
 
     @Override
     public void paintComponent(Graphics graphics)
     {
         super.paintComponent(graphics);
-        this.graphics = graphics;
 
-        graphics.setColor(Utils.OFF_COLOR);
-        graphics.fillRect(0, 0, width, height);
+        //Only the screen pixels under the clip, a repaint of the changed rectangle doesn't rescale the whole frame
+        Rectangle clip = graphics.getClipBounds();
+        if(clip == null) { clip = new Rectangle(0, 0, width, height); }
+
+        int left = Math.max(0, clip.x / Utils.SCREEN_SCALE);
+        int top = Math.max(0, clip.y / Utils.SCREEN_SCALE);
+        int right = Math.min(Utils.SCREEN_WIDTH, (clip.x + clip.width + Utils.SCREEN_SCALE - 1) / Utils.SCREEN_SCALE);
+        int bottom = Math.min(Utils.SCREEN_HEIGHT, (clip.y + clip.height + Utils.SCREEN_SCALE - 1) / Utils.SCREEN_SCALE);
+        if(left >= right || top >= bottom) { return; }
 
-        fillScreen();
+        synchronized(frame)
+        {
+            graphics.drawImage(frame,
+                    left * Utils.SCREEN_SCALE, top * Utils.SCREEN_SCALE, right * Utils.SCREEN_SCALE, bottom * Utils.SCREEN_SCALE,
+                    left, top, right, bottom, null);
+        }
     }
 }
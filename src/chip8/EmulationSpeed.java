@@ -0,0 +1,31 @@
+package chip8;
+
+///Fast-forward settings. Each wall clock frame runs framesPerTick emulated frames, timers included,
+///so a ROM sees exactly the same timing at every speed. Uncapped runs frames back to back without waiting.
+public enum EmulationSpeed {
+    NORMAL(1, "1x"),
+    DOUBLE(2, "2x"),
+    QUADRUPLE(4, "4x"),
+    UNCAPPED(0, "Uncapped");
+
+    private final int framesPerTick;
+    private final String label;
+
+    EmulationSpeed(int framesPerTick, String label)
+    {
+        this.framesPerTick = framesPerTick;
+        this.label = label;
+    }
+
+    public int getFramesPerTick() { return framesPerTick; }
+    public boolean isUncapped() { return framesPerTick == 0; }
+
+    public EmulationSpeed next()
+    {
+        EmulationSpeed[] speeds = values();
+        return speeds[(ordinal() + 1) % speeds.length];
+    }
+
+    @Override
+    public String toString() { return label; }
+}
@@ -0,0 +1,75 @@
+package chip8;
+
+import java.util.concurrent.locks.LockSupport;
+
+///Paces the emulation one 60Hz frame at a time.
+///Deadlines are computed from the start time and the frame count rather than accumulated, so they never drift,
+///and the leftover of CPU_FREQUENCY / FRAME_RATE is carried from frame to frame so no cycle is lost either.
+public class FrameScheduler {
+    //Park until this close to the deadline then spin, parkNanos alone can oversleep by tens of microseconds
+    private static final long SPIN_NANOSECONDS = 200_000;
+    //Further behind than this (debugger, suspended machine...) the schedule restarts instead of catching up
+    private static final int MAX_LATE_FRAMES = 5;
+
+    private int cyclesPerSecond;
+    private int cycleRemainder;
+
+    private long startTime;
+    private long frameCount;
+
+    public FrameScheduler(int cyclesPerSecond)
+    {
+        this.cyclesPerSecond = cyclesPerSecond;
+        restart();
+    }
+
+    public long getFrameCount() { return frameCount; }
+
+    ///Cycles owed to the coming frames, part of a save state
+    int getCycleRemainder() { return cycleRemainder; }
+    void setCycleRemainder(int value) { cycleRemainder = value; }
+
+    ///Starts the schedule over from now, the next frame is due one frame period later
+    public void restart()
+    {
+        startTime = System.nanoTime();
+        frameCount = 0;
+    }
+
+    ///Number of instructions to run in the coming frame, 8 or 9 at 500Hz averaging exactly 500 per second
+    public int nextFrameCycles()
+    {
+        cycleRemainder += cyclesPerSecond;
+        int cycles = cycleRemainder / Utils.FRAME_RATE;
+        cycleRemainder -= cycles * Utils.FRAME_RATE;
+
+        return cycles;
+    }
+
+    ///Absolute time the current frame ends at
+    public long getFrameDeadline()
+    {
+        return startTime + (frameCount + 1) * Utils.NANOSECONDS_PER_SECOND / Utils.FRAME_RATE;
+    }
+
+    ///Blocks until the current frame's deadline then moves on to the next frame
+    public void waitForNextFrame()
+    {
+        long deadline = getFrameDeadline();
+
+        if(System.nanoTime() - deadline > MAX_LATE_FRAMES * Utils.NANOSECONDS_PER_SECOND / Utils.FRAME_RATE)
+        {
+            restart();
+            return;
+        }
+
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0)
+        {
+            if(remaining > SPIN_NANOSECONDS) { LockSupport.parkNanos(remaining - SPIN_NANOSECONDS); }
+            else { Thread.onSpinWait(); }
+        }
+
+        frameCount++;
+    }
+}
@@ -0,0 +1,14 @@
+package chip8;
+
+///Receives what the emulator has to show. Swing is one implementation, headless runs use NONE.
+public interface FrameSink {
+    FrameSink NONE = () -> {};
+
+    ///Called once per displayed frame from the emulation thread, the screen is read from Memory
+    void presentFrame();
+
+    ///Called after every executed instruction or block, for debug views
+    default void presentDebug() {}
+
+    default void presentSpeed(EmulationSpeed speed, long achievedFrequency) {}
+}
@@ -0,0 +1,12 @@
+package chip8;
+
+import java.awt.*;
+
+///Swing only constants, kept apart from Utils so headless runs never load AWT
+public class GuiUtils {
+    public static final Color ON_COLOR = new Color(160, 179, 141);
+    public static final Color OFF_COLOR = new Color(41, 51, 30);
+    public static final Color WINDOW_COLOR = new Color(48, 48, 48);
+
+    private GuiUtils(){}; //Private constructor to hide the public one
+}
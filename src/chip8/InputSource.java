@@ -0,0 +1,40 @@
+package chip8;
+
+///Where the emulator gets its keypad state and debug controls from
+public interface InputSource {
+    ///Headless input, no key is ever held and FX0A reads key 0 right away instead of hanging forever
+    InputSource NONE = new InputSource() {
+        @Override
+        public int getCurrentKeyPressed() { return -1; }
+
+        @Override
+        public int waitForKeyPress() { return 0; }
+    };
+
+    ///Chip8 key currently held, -1 when none
+    int getCurrentKeyPressed();
+
+    ///Blocks until a key is pressed and returns it.
+    ///Inputs that can't block return -1 instead, FX0A then runs again on the next cycle.
+    int waitForKeyPress();
+
+    default boolean isStepModeActive() { return false; }
+
+    ///Enters or leaves step mode from the emulator's side, when a breakpoint is hit. Ignored by inputs without one.
+    default void setStepModeActive(boolean value) { }
+
+    ///Blocks in step mode until there is something to do: an instruction to step, or step mode left.
+    ///Inputs without step mode return right away.
+    default void awaitStepCommand() throws InterruptedException { }
+
+    ///Returns true once per request to run the next instruction in step mode
+    default boolean consumeNextInstruction() { return false; }
+
+    ///Returns true once per request to go back one instruction in step mode
+    default boolean consumePreviousInstruction() { return false; }
+
+    default EmulationSpeed getSpeed() { return EmulationSpeed.NORMAL; }
+
+    ///True while the emulation should run backwards one recorded frame at a time
+    default boolean isRewindHeld() { return false; }
+}
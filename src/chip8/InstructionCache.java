@@ -0,0 +1,80 @@
+package chip8;
+
+import java.util.Arrays;
+
+///Keeps one decoded instruction per program address so an opcode is only decoded the first time it runs.
+///Entries are dropped as soon as one of the bytes they were decoded from is written (FX55, FX33, rom loading...)
+public class InstructionCache implements MemoryListener {
+    //A fused entry at address a covers the bytes a to a+3
+    private static final int LONGEST_INSTRUCTION_BYTES = 4;
+
+    private Memory memory;
+    private DecodedInstruction[] instructions;
+    private boolean fusionEnabled = true;
+
+    public InstructionCache(Memory memory)
+    {
+        this.memory = memory;
+        this.instructions = new DecodedInstruction[Utils.MEMORY_SIZE];
+    }
+
+    public boolean isFusionEnabled() { return fusionEnabled; }
+    public void setFusionEnabled(boolean value)
+    {
+        fusionEnabled = value;
+        clear();
+    }
+
+    ///Returns the instruction starting at the given address, or null if no full opcode fits there
+    public DecodedInstruction get(short address)
+    {
+        if(address < 0 || address >= Utils.MAX_MEMORY_ADDRESS) { return null; }
+
+        DecodedInstruction instruction = instructions[address];
+        if(instruction == null)
+        {
+            instruction = decodeAt(address);
+            instructions[address] = instruction;
+        }
+
+        return instruction;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(instructions, null);
+    }
+
+    @Override
+    public void onMemoryWrite(short address)
+    {
+        int first = Math.max(0, address - (LONGEST_INSTRUCTION_BYTES - 1));
+        for(int i = first; i <= address; i++)
+        {
+            instructions[i] = null;
+        }
+    }
+
+    private DecodedInstruction decodeAt(short address)
+    {
+        DecodedInstruction instruction = DecodedInstruction.decode(readOpcode(address));
+
+        if(fusionEnabled && address + LONGEST_INSTRUCTION_BYTES - 1 <= Utils.MAX_MEMORY_ADDRESS)
+        {
+            DecodedInstruction next = DecodedInstruction.decode(readOpcode((short)(address + 2)));
+            DecodedInstruction fused = DecodedInstruction.fuse(instruction, next);
+
+            if(fused != null) { return fused; }
+        }
+
+        return instruction;
+    }
+
+    private short readOpcode(short address)
+    {
+        byte msb = memory.getMemoryAtAddress(address);
+        byte lsb = memory.getMemoryAtAddress((short)(address + 0x1));
+
+        return (short)(msb << 8 | lsb & 0x00FF);
+    }
+}
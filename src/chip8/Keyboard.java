@@ -4,18 +4,44 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.security.Key;
 
-public class Keyboard extends KeyAdapter
+public class Keyboard extends KeyAdapter implements InputSource
 {
-    private int currentKeyPressed;
-    private boolean stepModeActive = false;
+    private volatile int currentKeyPressed;
+    private volatile boolean stepModeActive = false;
+    private volatile EmulationSpeed speed = EmulationSpeed.NORMAL;
 
-    public boolean nextInstructionPressed = false;
+    private volatile boolean nextInstructionPressed = false;
+    private volatile boolean previousInstructionPressed = false;
+    private volatile boolean rewindHeld = false;
 
+    //Notified on every key event, the emulation thread waits on it for FX0A and while paused
+    private final Object keyEvents = new Object();
+
+    @Override
     public int getCurrentKeyPressed() { return currentKeyPressed; }
 
+    @Override
     public boolean isStepModeActive() { return stepModeActive; }
 
-    public void setCurrentKeyPressed(int value) { currentKeyPressed = value; }
+    @Override
+    public void setStepModeActive(boolean value)
+    {
+        stepModeActive = value;
+        signalKeyEvent();
+    }
+
+    @Override
+    public EmulationSpeed getSpeed() { return speed; }
+    public void setSpeed(EmulationSpeed value) { speed = value; }
+
+    @Override
+    public boolean isRewindHeld() { return rewindHeld; }
+
+    public void setCurrentKeyPressed(int value)
+    {
+        currentKeyPressed = value;
+        signalKeyEvent();
+    }
 
     public Keyboard()
     {
@@ -27,18 +53,34 @@ public class Keyboard extends KeyAdapter
     {
         switch (e.getKeyCode())
         {
+            case Utils.SPEED_TOGGLE_KEY:
+                speed = speed.next();
+                break;
+            case Utils.REWIND_KEY:
+                rewindHeld = true;
+                break;
             case Utils.DEBUG_TOGGLE_STEP_MODE:
                 stepModeActive ^= true;
             default:
                 currentKeyPressed = mapKeyCodeToChip8Key(e.getKeyCode());
                 break;
         }
+
+        signalKeyEvent();
     }
 
     @Override
     public void keyReleased(KeyEvent e)
     {
-        currentKeyPressed = -1;
+        if(e.getKeyCode() == Utils.REWIND_KEY) { rewindHeld = false; }
+        else { currentKeyPressed = -1; }
+
+        signalKeyEvent();
+    }
+
+    private void signalKeyEvent()
+    {
+        synchronized(keyEvents) { keyEvents.notifyAll(); }
     }
 
     public int mapKeyCodeToChip8Key(int keycode)
@@ -52,24 +94,59 @@ public class Keyboard extends KeyAdapter
         }
 
         if(keycode == Utils.DEBUG_NEXT_INSTRUCTION_KEY) { nextInstructionPressed = true; }
+        if(keycode == Utils.DEBUG_PREVIOUS_INSTRUCTION_KEY) { previousInstructionPressed = true; }
         return 0;
     }
 
-    public int keyboardInterrupt()
+    @Override
+    public boolean consumeNextInstruction()
+    {
+        if(!nextInstructionPressed) { return false; }
+
+        nextInstructionPressed = false;
+        return true;
+    }
+
+    @Override
+    public boolean consumePreviousInstruction()
     {
-        while(currentKeyPressed == -1)
+        if(!previousInstructionPressed) { return false; }
+
+        previousInstructionPressed = false;
+        return true;
+    }
+
+    @Override
+    public void awaitStepCommand() throws InterruptedException
+    {
+        synchronized(keyEvents)
         {
-            try
-            {
-                Thread.sleep(0);
-            }
-            catch (InterruptedException e)
+            while(stepModeActive && !nextInstructionPressed && !previousInstructionPressed) { keyEvents.wait(); }
+        }
+    }
+
+    ///Sleeps until a key goes down. Interrupted, it returns -1 and FX0A waits again on the next cycle.
+    @Override
+    public int waitForKeyPress()
+    {
+        synchronized(keyEvents)
+        {
+            int key;
+            while((key = currentKeyPressed) == -1)
             {
-                e.printStackTrace();
+                try
+                {
+                    keyEvents.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
             }
-        }
 
-        return currentKeyPressed;
+            return key;
+        }
     }
 }
 
@@ -0,0 +1,389 @@
+package chip8;
+
+import exceptions.UnknownOpcodeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+///Embeddable CHIP-8, the CPU, memory, registers and timers behind bulk run methods.
+///Frames are counted in emulated instructions, a frame ends after CPU_FREQUENCY / FRAME_RATE of them on average
+///and ticks the timers, wherever the caller's runCycles calls happen to cut. Nothing here waits on wall time.
+public class Machine {
+    private Registers registers;
+    private Memory memory;
+    private CPU cpu;
+    private BlockEngine blockEngine;
+    private RecompiledRom recompiledRom;
+    private Path recompilerCache;     /* Null leaves every rom to the block engine */
+    private FrameScheduler frameCycles;
+    private FrameSink frameSink = FrameSink.NONE;
+    private AudioSink audioSink = AudioSink.NONE;
+    private Breakpoints breakpoints = new Breakpoints();
+    private Profiler profiler = new Profiler();
+    private CallGraphProfiler callGraph = new CallGraphProfiler();
+
+    private static final Logger LOGGER = Logger.getLogger(Machine.class.getName());
+
+    private int cyclesLeftInFrame;
+    private long frameCount;
+    private long cycleCount;
+
+    private String breakReason;
+    private long resumeCycle = -1;    /* The instruction a break stopped at runs without checks when resuming */
+    private int retiredBeforeFault;   /* Set by runChecked and runBlock when an instruction throws */
+
+    //What memoryChanged compares against, only the addresses its predicates asked for in the current runUntil
+    private static final short NOT_WATCHED = -1;
+    private final short[] memoryAtRunStart = new short[Utils.MEMORY_SIZE];
+    private int[] watchedAddresses = new int[4];
+    private int watchedCount;
+
+    public Machine(InputSource input)
+    {
+        registers = new Registers();
+        memory = new Memory();
+        cpu = new CPU(memory, registers, input);
+        blockEngine = new BlockEngine(cpu, memory, registers);
+
+        //Only used to split the frequency into frames, never to wait
+        frameCycles = new FrameScheduler(Utils.CPU_FREQUENCY);
+        cyclesLeftInFrame = frameCycles.nextFrameCycles();
+
+        Arrays.fill(memoryAtRunStart, NOT_WATCHED);
+    }
+
+    public Registers getRegisters() { return registers; }
+    public Memory getMemory() { return memory; }
+    public CPU getCpu() { return cpu; }
+    public BlockEngine getBlockEngine() { return blockEngine; }
+
+    public long getFrameCount() { return frameCount; }
+    public long getCycleCount() { return cycleCount; }
+
+    public Breakpoints getBreakpoints() { return breakpoints; }
+    ///What stopped the last run, null if it ran to the end
+    public String getBreakReason() { return breakReason; }
+    public Profiler getProfiler() { return profiler; }
+    public CallGraphProfiler getCallGraph() { return callGraph; }
+
+    ///Receives presentDebug after every block, frames are presented by whoever drives the machine
+    public void setFrameSink(FrameSink value) { frameSink = value; }
+    public void setAudioSink(AudioSink value) { audioSink = value; }
+
+    ///Has the next loadRom recompile the rom to a Java class kept in the directory. Off by default:
+    ///a rom not in the cache yet takes seconds to compile before it runs, null turns it back off.
+    public void setRecompilerCache(Path directory) { recompilerCache = directory; }
+
+    public void loadRom(String title) throws IOException
+    {
+        File file = new File(Utils.ROMS_PATH + title);
+        loadRom(Files.readAllBytes(file.toPath()));
+    }
+
+    ///Resets the machine and loads the rom, a Machine can run one rom after the other.
+    ///The random seed and the profilers are left as they are.
+    public void loadRom(byte[] bytes)
+    {
+        reset();
+
+        short currentAddress = Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+
+        for (byte b : bytes)
+        {
+            memory.setMemoryAtAddress(currentAddress, b);
+            currentAddress += 0x1;
+        }
+
+        LOGGER.info("Successfully loaded rom");
+
+        recompiledRom = recompilerCache == null ? null : RomRecompiler.load(bytes, recompilerCache);
+        if(recompiledRom != null) { recompiledRom.attach(cpu, memory, registers); }
+    }
+
+    private void reset()
+    {
+        if(recompiledRom != null)
+        {
+            memory.removeMemoryListener(recompiledRom);
+            recompiledRom = null;
+        }
+
+        registers.resetAllRegisters();
+        memory.reset();
+        blockEngine.clear();
+
+        frameCycles.setCycleRemainder(0);
+        cyclesLeftInFrame = frameCycles.nextFrameCycles();
+        frameCount = 0;
+        cycleCount = 0;
+        breakReason = null;
+        resumeCycle = -1;
+    }
+
+    //region RUN
+
+    ///Runs exactly the given number of instructions, frames end on the same instruction however the calls cut the run.
+    ///Stops early in front of an instruction hitting a breakpoint, getBreakReason then tells which.
+    ///While a profiler is enabled every instruction goes through the reference interpreter and is counted.
+    ///An instruction that throws isn't counted, the ones that ran before it in the same block are, just like when stepping.
+    ///Returns the number of instructions retired.
+    public int runCycles(int cycles) throws UnknownOpcodeException
+    {
+        breakReason = null;
+
+        int executedCycles = 0;
+        while(executedCycles < cycles && breakReason == null)
+        {
+            int budget = Math.min(cycles - executedCycles, cyclesLeftInFrame);
+            boolean instrumented = breakpoints.isArmed() || profiler.isEnabled() || callGraph.isEnabled();
+            int retired;
+            try
+            {
+                retired = instrumented ? runChecked(budget) : runBlock(budget);
+            }
+            catch(UnknownOpcodeException | RuntimeException e)
+            {
+                countCycles(retiredBeforeFault);
+                throw e;
+            }
+            executedCycles += retired;
+            countCycles(retired);
+        }
+
+        return executedCycles;
+    }
+
+    ///Runs what's left of the current frame, timers included. Returns the number of instructions retired.
+    public int runFrame() throws UnknownOpcodeException
+    {
+        return runCycles(cyclesLeftInFrame);
+    }
+
+    ///Runs one instruction through the reference interpreter, for single stepping
+    public void step() throws UnknownOpcodeException
+    {
+        cpu.fetchOpcode();
+        cpu.incrementPC();
+        cpu.decodeAndRunOpcode();
+        frameSink.presentDebug();
+
+        countCycles(1);
+    }
+
+    ///Runs exactly one instruction through the reference interpreter without presenting anything
+    void stepSilently() throws UnknownOpcodeException
+    {
+        cpu.fetchOpcode();
+        cpu.incrementPC();
+        cpu.decodeAndRunOpcode();
+
+        countCycles(1);
+    }
+
+    ///Runs until the condition holds, checking it before each instruction, or until maxCycles instructions ran.
+    ///Instructions go one at a time through the same dispatch as runCycles, so a breakpoint stops the run just the same
+    ///and getBreakReason tells which. Returns true if the condition was met.
+    public boolean runUntil(Predicate<Machine> condition, long maxCycles) throws UnknownOpcodeException
+    {
+        forgetWatchedMemory();
+        breakReason = null;
+
+        long executedCycles = 0;
+        while(!condition.test(this))
+        {
+            if(executedCycles >= maxCycles || breakReason != null) { return false; }
+
+            executedCycles += runCycles(1);
+        }
+
+        return true;
+    }
+
+    ///True when the instruction at PC is a jump to itself, the usual way a rom halts
+    public boolean isHalted()
+    {
+        short PC = registers.getPC();
+        if(PC < 0 || PC >= Utils.MEMORY_SIZE - 1) { return false; }
+
+        int opcode = ((memory.getMemoryAtAddress(PC) & 0xFF) << 8) | (memory.getMemoryAtAddress((short)(PC + 1)) & 0xFF);
+        return opcode == (0x1000 | PC);
+    }
+
+    //Instrumented dispatch, only while breakpoints are armed or a profiler is on
+    private int runChecked(int budget) throws UnknownOpcodeException
+    {
+        boolean checking = breakpoints.isArmed();
+        boolean profiling = profiler.isEnabled();
+        boolean tracingCalls = callGraph.isEnabled();
+
+        for(int retired = 0; retired < budget; retired++)
+        {
+            if(checking && cycleCount + retired != resumeCycle)
+            {
+                String reason = breakpoints.check(registers, memory);
+                if(reason != null)
+                {
+                    breakReason = reason;
+                    resumeCycle = cycleCount + retired;
+                    frameSink.presentDebug();
+                    return retired;
+                }
+            }
+
+            short address = registers.getPC();
+            byte depth = registers.getSP();
+            try
+            {
+                cpu.fetchOpcode();
+                cpu.incrementPC();
+                cpu.decodeAndRunOpcode();
+            }
+            catch(UnknownOpcodeException | RuntimeException e)
+            {
+                retiredBeforeFault = retired;
+                throw e;
+            }
+
+            if(profiling) { profiler.record(address, cpu.getCurrentOpcode(), registers.getPC()); }
+            if(tracingCalls) { callGraph.record(depth, registers.getSP(), registers.getPC()); }
+        }
+
+        return budget;
+    }
+
+    //A block retires several instructions at once, the returned count keeps the frame budget right
+    private int runBlock(int budget) throws UnknownOpcodeException
+    {
+        int executedCycles = 0;
+        if(recompiledRom != null)
+        {
+            try
+            {
+                executedCycles = recompiledRom.run(budget);
+            }
+            catch(RuntimeException e)
+            {
+                retiredBeforeFault = recompiledRom.getRetiredBeforeFault();
+                throw e;
+            }
+        }
+
+        //Not compiled ahead of time
+        if(executedCycles == 0)
+        {
+            try
+            {
+                executedCycles = blockEngine.runBlock(budget);
+            }
+            catch(UnknownOpcodeException | RuntimeException e)
+            {
+                retiredBeforeFault = blockEngine.getRetiredBeforeFault();
+                throw e;
+            }
+        }
+        frameSink.presentDebug();
+
+        return executedCycles;
+    }
+
+    //The first test of a memoryChanged predicate in a run remembers the byte, before the first instruction runs
+    private byte valueAtRunStart(int address)
+    {
+        if(memoryAtRunStart[address] == NOT_WATCHED)
+        {
+            memoryAtRunStart[address] = (short)(memory.getMemoryAtAddress((short) address) & 0xFF);
+            if(watchedCount == watchedAddresses.length) { watchedAddresses = Arrays.copyOf(watchedAddresses, watchedCount * 2); }
+            watchedAddresses[watchedCount++] = address;
+        }
+
+        return (byte) memoryAtRunStart[address];
+    }
+
+    private void forgetWatchedMemory()
+    {
+        for(int i = 0; i < watchedCount; i++) { memoryAtRunStart[watchedAddresses[i]] = NOT_WATCHED; }
+        watchedCount = 0;
+    }
+
+    private void countCycles(int retired)
+    {
+        cycleCount += retired;
+        cyclesLeftInFrame -= retired;
+
+        if(cyclesLeftInFrame <= 0)
+        {
+            updateTimers();
+            frameCount++;
+            cyclesLeftInFrame += frameCycles.nextFrameCycles();
+        }
+    }
+
+    private void updateTimers()
+    {
+        if(registers.getST() != 0) { audioSink.playSound(); }
+
+        registers.tickTimers();
+
+        if(registers.getST() == 0) { audioSink.stopSound(); }
+    }
+
+    //endregion
+
+    //region STATE
+    static final int STATE_SIZE = Registers.STATE_SIZE + Memory.STATE_SIZE + CPU.STATE_SIZE + 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    ///Everything needed to carry on exactly where the machine was, see SaveState for the file format
+    void writeState(ByteBuffer buffer)
+    {
+        registers.writeState(buffer);
+        memory.writeState(buffer);
+        cpu.writeState(buffer);
+
+        buffer.putInt(cyclesLeftInFrame);
+        buffer.putInt(frameCycles.getCycleRemainder());
+        buffer.putLong(frameCount);
+        buffer.putLong(cycleCount);
+    }
+
+    void readState(ByteBuffer buffer)
+    {
+        registers.readState(buffer);
+        memory.readState(buffer);
+        cpu.readState(buffer);
+
+        cyclesLeftInFrame = buffer.getInt();
+        frameCycles.setCycleRemainder(buffer.getInt());
+        frameCount = buffer.getLong();
+        cycleCount = buffer.getLong();
+    }
+
+    //endregion
+
+    //region CONDITIONS
+
+    public static Predicate<Machine> pcReached(int address)
+    {
+        return machine -> machine.registers.getPC() == address;
+    }
+
+    ///Holds once the byte at the address differs from what it was when the current runUntil started.
+    ///The machine remembers the byte the first time the predicate is tested, so a combined condition that
+    ///skips it on the first test compares against a later value. The same predicate can be handed to one runUntil after the other.
+    public static Predicate<Machine> memoryChanged(int address)
+    {
+        return machine -> machine.memory.getMemoryAtAddress((short) address) != machine.valueAtRunStart(address);
+    }
+
+    public static Predicate<Machine> framesRun(long frames)
+    {
+        return machine -> machine.frameCount >= frames;
+    }
+
+    //endregion
+}
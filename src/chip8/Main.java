@@ -1,11 +1,118 @@
 package chip8;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class Main {
-    public static void main(String[] args)
+    private static final String DEFAULT_ROM = "games/Pong (1 player).ch8";
+    private static final long SHUTDOWN_WAIT_MILLISECONDS = 2000;
+
+    ///Usage: Main [--headless] [--record movie | --replay movie] [--profile report] [--jmx] [--flamegraph stacks] [rom path relative to the roms folder]
+    ///--profile turns the profiler on from the start and writes its report on exit.
+    ///The profiler is registered over JMX with --profile, or with --jmx to leave it off until it's turned on from there.
+    ///--flamegraph writes where the cycles went per emulated call stack, in collapsed-stack format, on exit.
+    public static void main(String[] args) throws Exception
     {
-        Chip8 chip8 = new Chip8();
-        //Keyboard kb = new Keyboard();
+        boolean headless = false;
+        Path recordPath = null;
+        Path replayPath = null;
+        Path profilePath = null;
+        boolean jmx = false;
+        Path flameGraphPath = null;
+        String rom = DEFAULT_ROM;
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--headless": headless = true; break;
+                case "--record": recordPath = Paths.get(args[++i]); break;
+                case "--replay": replayPath = Paths.get(args[++i]); break;
+                case "--profile": profilePath = Paths.get(args[++i]); break;
+                case "--jmx": jmx = true; break;
+                case "--flamegraph": flameGraphPath = Paths.get(args[++i]); break;
+                default: rom = args[i]; break;
+            }
+        }
+
+        byte[] romBytes = Files.readAllBytes(Paths.get(Utils.ROMS_PATH + rom));
+
+        if(replayPath != null)
+        {
+            replay(Movie.read(replayPath), romBytes);
+            return;
+        }
+
+        InputSource input;
+        Keyboard keyboard = null;
+        if(headless)
+        {
+            input = InputSource.NONE;
+        }
+        else
+        {
+            //Swing and javax.sound are only touched from here on
+            keyboard = new Keyboard();
+            input = keyboard;
+        }
+
+        MovieRecorder recorder = recordPath == null ? null : new MovieRecorder(input, System.nanoTime(), romBytes);
+        Chip8 chip8 = new Chip8(recorder == null ? input : recorder);
+        if(keyboard != null) { new SwingFrontend(keyboard).attach(chip8); }
+
+        Profiler profiler = chip8.getMachine().getProfiler();
+        if(jmx || profilePath != null) { profiler.register(); }
+        profiler.setEnabled(profilePath != null);
+        chip8.getMachine().getCallGraph().setEnabled(flameGraphPath != null);
+
+        if(recorder != null) { recorder.start(chip8.getMachine()); }
+
+        if(recorder != null || profilePath != null || flameGraphPath != null)
+        {
+            //Closing the window exits the JVM, stop the loop there and let this thread write the movie and the profiles
+            Thread emulationThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                chip8.stop();
+                try { emulationThread.join(SHUTDOWN_WAIT_MILLISECONDS); }
+                catch(InterruptedException ignored) { }
+            }));
+        }
+
+        chip8.getMachine().setRecompilerCache(Paths.get(Utils.RECOMPILER_CACHE_PATH));
+        chip8.loadRom(romBytes);
+        chip8.emulationLoop();
+
+        if(recorder != null) { saveMovie(recorder.finish(chip8.getMachine()), recordPath); }
+        if(profilePath != null)
+        {
+            profiler.dump(profilePath);
+            System.out.println("Profiled " + profiler.getInstructionCount() + " instructions to " + profilePath);
+        }
+        if(flameGraphPath != null)
+        {
+            chip8.getMachine().getCallGraph().dump(flameGraphPath);
+            System.out.println("Wrote collapsed call stacks to " + flameGraphPath);
+        }
+    }
+
+    private static void saveMovie(Movie movie, Path path) throws IOException
+    {
+        movie.write(path);
+        System.out.println("Recorded " + movie.getEndCycle() + " instructions and " + movie.getChangeCount() + " key changes to " + path);
+    }
+
+    private static void replay(Movie movie, byte[] rom) throws Exception
+    {
+        long start = System.nanoTime();
+        Machine machine = MoviePlayer.replay(movie, rom);
+        long elapsed = System.nanoTime() - start;
+
+        boolean matches = MoviePlayer.matches(movie, machine);
+        System.out.printf("Replayed %d instructions in %.2f s, %.1f MIPS, final state %s%n",
+                machine.getCycleCount(), elapsed / 1e9, machine.getCycleCount() * 1e3 / elapsed, matches ? "matches" : "DIFFERS");
 
-        //while(true){}
+        if(!matches) { System.exit(1); }
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,23 @@
 package chip8;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class Memory {
     private byte[] memory;
     private short[] stack;
 
-    private boolean[][] screenMemory;
+    private long[] screenMemory; /* One row per long, pixel x is bit 63 - x */
+    private int dirtyRows;
+    private long dirtyColumns;
+
+    private MemoryListener[] listeners = new MemoryListener[0];
 
     public Memory()
     {
         memory = new byte[Utils.MEMORY_SIZE];
         stack = new short[Utils.STACK_SIZE];
-        screenMemory = new boolean[Utils.SCREEN_WIDTH][Utils.SCREEN_HEIGHT];
+        screenMemory = new long[Utils.SCREEN_HEIGHT];
 
         loadHexSpritesToMemory();
     }
@@ -35,6 +42,41 @@ public class Memory {
         else
         {
             memory[address] = value;
+
+            for(MemoryListener listener : listeners) { listener.onMemoryWrite(address); }
+        }
+    }
+
+    ///Back to power on: only the font sprites in memory, an empty stack and a blank screen.
+    ///Listeners hear about every byte that changes.
+    public void reset()
+    {
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            if(memory[address] != 0) { setMemoryAtAddress((short) address, (byte) 0); }
+        }
+        loadHexSpritesToMemory();
+
+        Arrays.fill(stack, (short) 0);
+        clearScreen();
+    }
+
+    public void addMemoryListener(MemoryListener listener)
+    {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    public void removeMemoryListener(MemoryListener listener)
+    {
+        for(int i = 0; i < listeners.length; i++)
+        {
+            if(listeners[i] != listener) { continue; }
+
+            MemoryListener[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+            System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+            listeners = remaining;
+            return;
         }
     }
 
@@ -49,12 +91,108 @@ public class Memory {
 
     public boolean getPixelAtPosition(byte x, byte y)
     {
-        return screenMemory[x][y];
+        return (screenMemory[y] & pixelMask(x)) != 0;
     }
     public void setPixelAtPosition(byte x, byte y, boolean state)
     {
-        screenMemory[x][y] = state;
+        if(state) { setScreenRow(y, screenMemory[y] | pixelMask(x)); }
+        else { setScreenRow(y, screenMemory[y] & ~pixelMask(x)); }
+    }
+
+    private long pixelMask(byte x) { return Long.MIN_VALUE >>> x; }
+
+    ///Whole row of pixels, the leftmost pixel being the most significant bit
+    public long getScreenRow(int y) { return screenMemory[y]; }
+    public void setScreenRow(int y, long pixels)
+    {
+        markDirty(y, screenMemory[y] ^ pixels);
+        screenMemory[y] = pixels;
+    }
+
+    ///Copies every row into destination, which must hold Utils.SCREEN_HEIGHT longs
+    public void copyScreenRows(long[] destination)
+    {
+        System.arraycopy(screenMemory, 0, destination, 0, Utils.SCREEN_HEIGHT);
+    }
+
+    ///64 bit FNV-1a hash of the screen, identical screens hash the same across runs and machines
+    public long hashScreen()
+    {
+        long hash = 0xCBF29CE484222325L;
+        for(long row : screenMemory)
+        {
+            for(int shift = 56; shift >= 0; shift -= 8)
+            {
+                hash ^= (row >>> shift) & 0xFF;
+                hash *= 0x100000001B3L;
+            }
+        }
+
+        return hash;
+    }
+
+    ///XORs pixels onto a row and returns true if any pixel that was on got turned off
+    public boolean xorScreenRow(int y, long pixels)
+    {
+        long previous = screenMemory[y];
+        screenMemory[y] = previous ^ pixels;
+        markDirty(y, pixels);
+
+        return (previous & pixels) != 0;
+    }
+
+    public void clearScreen()
+    {
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++) { markDirty(y, screenMemory[y]); }
+
+        Arrays.fill(screenMemory, 0L);
+    }
+
+    //region STATE
+    static final int STATE_SIZE = Utils.MEMORY_SIZE + Utils.STACK_SIZE * Short.BYTES + Utils.SCREEN_HEIGHT * Long.BYTES;
+
+    void writeState(ByteBuffer buffer)
+    {
+        buffer.put(memory);
+        for(short value : stack) { buffer.putShort(value); }
+        for(long row : screenMemory) { buffer.putLong(row); }
+    }
+
+    ///Only bytes that actually change are written and reported to the listeners,
+    ///restoring a state close to the current one leaves the caches of the execution engines alone
+    void readState(ByteBuffer buffer)
+    {
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            byte value = buffer.get();
+            if(memory[address] != value) { setMemoryAtAddress((short) address, value); }
+        }
+
+        for(int i = 0; i < Utils.STACK_SIZE; i++) { stack[i] = buffer.getShort(); }
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++) { setScreenRow(y, buffer.getLong()); }
+    }
+    //endregion
+
+    //region DIRTY REGION
+    ///Rows changed since the last clearDirtyRegion, bit y for row y
+    public int getDirtyRows() { return dirtyRows; }
+    ///Columns changed since the last clearDirtyRegion, laid out like the pixels of a row
+    public long getDirtyColumns() { return dirtyColumns; }
+
+    public void clearDirtyRegion()
+    {
+        dirtyRows = 0;
+        dirtyColumns = 0L;
+    }
+
+    private void markDirty(int y, long changedPixels)
+    {
+        if(changedPixels == 0L) { return; }
+
+        dirtyRows |= 1 << y;
+        dirtyColumns |= changedPixels;
     }
+    //endregion
 
     private void loadHexSpritesToMemory()
     {
@@ -0,0 +1,6 @@
+package chip8;
+
+///Notified by Memory every time a byte of the main memory is written
+public interface MemoryListener {
+    void onMemoryWrite(short address);
+}
@@ -0,0 +1,150 @@
+package chip8;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+///A recorded play session: the rom and CXKK seed it started from, every change of the keypad value the CPU read,
+///and where the session ended with a checksum of the machine state there.
+///Key changes are stamped with the index of the keypad read they were first seen on. EX9E, EXA1 and FX0A read the keypad
+///exactly once each, so the read index pins a change to one instruction however the instructions are grouped into blocks.
+///File layout is the magic, the version, the header fields, then per change the read index delta as a varint and the key.
+public class Movie {
+    public static final int MAGIC = 0x43384D56; /* "C8MV" */
+    public static final short VERSION = 1;
+
+    private final long seed;
+    private final int romChecksum;
+
+    private long[] reads = new long[64];
+    private byte[] keys = new byte[64];
+    private int changeCount;
+
+    private long endFrame;
+    private long endCycle;
+    private int endStateChecksum;
+
+    public Movie(long seed, int romChecksum)
+    {
+        this.seed = seed;
+        this.romChecksum = romChecksum;
+    }
+
+    public long getSeed() { return seed; }
+    public int getRomChecksum() { return romChecksum; }
+    public int getChangeCount() { return changeCount; }
+    public long getRead(int change) { return reads[change]; }
+    public int getKey(int change) { return keys[change]; }
+    public long getEndFrame() { return endFrame; }
+    public long getEndCycle() { return endCycle; }
+    public int getEndStateChecksum() { return endStateChecksum; }
+
+    public static int checksumRom(byte[] rom)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(rom);
+
+        return (int) crc.getValue();
+    }
+
+    void addChange(long read, int key)
+    {
+        if(changeCount == reads.length)
+        {
+            reads = Arrays.copyOf(reads, changeCount * 2);
+            keys = Arrays.copyOf(keys, changeCount * 2);
+        }
+
+        reads[changeCount] = read;
+        keys[changeCount] = (byte) key;
+        changeCount++;
+    }
+
+    void end(Machine machine)
+    {
+        endFrame = machine.getFrameCount();
+        endCycle = machine.getCycleCount();
+        endStateChecksum = SaveState.checksum(machine);
+    }
+
+    //region FILE
+
+    public void write(Path path) throws IOException
+    {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))))
+        {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(seed);
+            out.writeInt(romChecksum);
+            out.writeLong(endFrame);
+            out.writeLong(endCycle);
+            out.writeInt(endStateChecksum);
+            out.writeInt(changeCount);
+
+            long previous = 0;
+            for(int i = 0; i < changeCount; i++)
+            {
+                writeVarint(out, reads[i] - previous);
+                out.writeByte(keys[i]);
+                previous = reads[i];
+            }
+        }
+    }
+
+    public static Movie read(Path path) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            int magic = in.readInt();
+            if(magic != MAGIC) { throw new IOException(String.format("Not a movie, magic %08X", magic)); }
+
+            short version = in.readShort();
+            if(version != VERSION) { throw new IOException("Unsupported movie version " + version); }
+
+            Movie movie = new Movie(in.readLong(), in.readInt());
+            movie.endFrame = in.readLong();
+            movie.endCycle = in.readLong();
+            movie.endStateChecksum = in.readInt();
+
+            int changes = in.readInt();
+            long read = 0;
+            for(int i = 0; i < changes; i++)
+            {
+                read += readVarint(in);
+                movie.addChange(read, in.readByte());
+            }
+
+            return movie;
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException
+    {
+        while(value >= 0x80)
+        {
+            out.writeByte((int)(value | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = in.readByte();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+
+        return value;
+    }
+
+    //endregion
+}
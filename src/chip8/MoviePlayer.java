@@ -0,0 +1,59 @@
+package chip8;
+
+///Feeds a Movie's keypad values back read by read, and replays whole movies headless as fast as the machine goes
+public class MoviePlayer implements InputSource {
+    private final Movie movie;
+
+    private long readCount;
+    private int nextChange;
+    private int currentKey = -1;
+
+    public MoviePlayer(Movie movie)
+    {
+        this.movie = movie;
+    }
+
+    private int play()
+    {
+        if(nextChange < movie.getChangeCount() && movie.getRead(nextChange) == readCount)
+        {
+            currentKey = movie.getKey(nextChange);
+            nextChange++;
+        }
+        readCount++;
+
+        return currentKey;
+    }
+
+    @Override
+    public int getCurrentKeyPressed() { return play(); }
+
+    ///Returns what FX0A got during recording, -1 only if the recording itself never blocked
+    @Override
+    public int waitForKeyPress() { return play(); }
+
+    ///Runs the movie from power on to where the recording ended and returns the machine there.
+    ///The rom has to be the one the movie was recorded on.
+    public static Machine replay(Movie movie, byte[] rom) throws Exception
+    {
+        if(Movie.checksumRom(rom) != movie.getRomChecksum()) { throw new IllegalArgumentException("Movie was recorded on a different rom"); }
+
+        Machine machine = new Machine(new MoviePlayer(movie));
+        machine.getCpu().setRandomSeed(movie.getSeed());
+        machine.loadRom(rom);
+
+        while(machine.getFrameCount() < movie.getEndFrame()) { machine.runFrame(); }
+
+        //A session stopped in step mode ends part way into a frame
+        long remaining = movie.getEndCycle() - machine.getCycleCount();
+        if(remaining > 0) { machine.runUntil(m -> m.getCycleCount() >= movie.getEndCycle(), remaining); }
+
+        return machine;
+    }
+
+    ///True when the replayed machine ended in exactly the recorded state
+    public static boolean matches(Movie movie, Machine machine)
+    {
+        return machine.getCycleCount() == movie.getEndCycle() && SaveState.checksum(machine) == movie.getEndStateChecksum();
+    }
+}
@@ -0,0 +1,60 @@
+package chip8;
+
+///Passes another input through and writes every change of the keypad value the CPU reads into a Movie.
+///Rewinding and stepping back are turned off while recording, a movie only replays a session that ran straight through.
+public class MovieRecorder implements InputSource {
+    private final InputSource input;
+    private final Movie movie;
+
+    private long readCount;
+    private int lastKey = -1;
+
+    public MovieRecorder(InputSource input, long seed, byte[] rom)
+    {
+        this.input = input;
+        this.movie = new Movie(seed, Movie.checksumRom(rom));
+    }
+
+    ///Seeds the machine's CXKK generator, call before the rom starts running
+    public void start(Machine machine) { machine.getCpu().setRandomSeed(movie.getSeed()); }
+
+    ///Stamps where the session ended, the movie is complete after this
+    public Movie finish(Machine machine)
+    {
+        movie.end(machine);
+        return movie;
+    }
+
+    private int record(int key)
+    {
+        if(key != lastKey)
+        {
+            movie.addChange(readCount, key);
+            lastKey = key;
+        }
+        readCount++;
+
+        return key;
+    }
+
+    @Override
+    public int getCurrentKeyPressed() { return record(input.getCurrentKeyPressed()); }
+
+    @Override
+    public int waitForKeyPress() { return record(input.waitForKeyPress()); }
+
+    @Override
+    public boolean isStepModeActive() { return input.isStepModeActive(); }
+
+    @Override
+    public void setStepModeActive(boolean value) { input.setStepModeActive(value); }
+
+    @Override
+    public void awaitStepCommand() throws InterruptedException { input.awaitStepCommand(); }
+
+    @Override
+    public boolean consumeNextInstruction() { return input.consumeNextInstruction(); }
+
+    @Override
+    public EmulationSpeed getSpeed() { return input.getSpeed(); }
+}
@@ -0,0 +1,230 @@
+package chip8;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+///Counts executed instructions per opcode family, per address and per back to back family pair, and spots hot loops.
+///Like Breakpoints it costs nothing while disabled: Machine only swaps to the reference interpreter and calls record
+///once it's enabled. Counters are plain arrays indexed by address or DecodedInstruction kind, written by the emulation
+///thread only. JMX clients read them as they are, a report taken while running can be a few instructions off.
+///A loop is any backward transfer other than a call or a return, from the jump to where it lands. Loops are ranked by
+///the instructions run inside them, so a busy-waiting FX07 loop shows up as readily as a long drawing one.
+public class Profiler implements ProfilerMXBean {
+    public static final String OBJECT_NAME = "chip8:type=Profiler";
+    private static final int FAMILIES = DecodedInstruction.READ_REGISTERS + 1;
+    private static final int ADDRESS_MASK = Utils.MEMORY_SIZE - 1;
+    private static final int TOP_COUNT = 20;
+
+    //Indexed by DecodedInstruction kind
+    private static final String[] FAMILY_NAMES = new String[]{
+            "0NNN SYS", "00E0 CLS", "00EE RET", "1NNN JP", "2NNN CALL", "3XKK SE", "4XKK SNE", "5XY0 SE", "6XKK LD",
+            "7XKK ADD", "8XY0 LD", "8XY1 OR", "8XY2 AND", "8XY3 XOR", "8XY4 ADD", "8XY5 SUB", "8XY6 SHR", "8XY7 SUBN",
+            "8XYE SHL", "9XY0 SNE", "ANNN LD I", "BNNN JP V0", "CXKK RND", "DXYN DRW", "EX9E SKP", "EXA1 SKNP",
+            "FX07 LD DT", "FX0A LD K", "FX15 LD DT", "FX18 LD ST", "FX1E ADD I", "FX29 LD F", "FX33 LD B", "FX55 LD [I]",
+            "FX65 LD Vx"
+    };
+
+    private final long[] familyCounts = new long[FAMILIES];
+    private final long[] addressCounts = new long[Utils.MEMORY_SIZE];
+    private final long[] pairCounts = new long[FAMILIES * FAMILIES];  /* First family * FAMILIES + second family */
+    private final long[] backEdgeCounts = new long[Utils.MEMORY_SIZE]; /* By address of the jump */
+    private final short[] backEdgeTargets = new short[Utils.MEMORY_SIZE];
+
+    private int previousAddress = -1;
+    private int previousFamily;
+
+    //Flipped from JMX or the UI while the machine runs
+    private volatile boolean enabled;
+
+    @Override
+    public boolean isEnabled() { return enabled; }
+    @Override
+    public void setEnabled(boolean value) { enabled = value; }
+
+    ///Called by Machine after each instruction while enabled, with the PC before and after it
+    void record(int address, short opcode, int nextAddress)
+    {
+        address &= ADDRESS_MASK;
+        nextAddress &= ADDRESS_MASK;
+        int family = DecodedInstruction.kindOf(opcode);
+
+        familyCounts[family]++;
+        addressCounts[address]++;
+
+        //Only fall-through pairs, the ones a superinstruction could cover
+        if(address == previousAddress + 2) { pairCounts[previousFamily * FAMILIES + family]++; }
+        previousAddress = address;
+        previousFamily = family;
+
+        if(nextAddress <= address && family != DecodedInstruction.CALL && family != DecodedInstruction.RET)
+        {
+            backEdgeCounts[address]++;
+            backEdgeTargets[address] = (short) nextAddress;
+        }
+    }
+
+    ///Adds another profile's counts to this one, for totals over several machines
+    public void add(Profiler other)
+    {
+        for(int i = 0; i < FAMILIES; i++) { familyCounts[i] += other.familyCounts[i]; }
+        for(int i = 0; i < pairCounts.length; i++) { pairCounts[i] += other.pairCounts[i]; }
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            addressCounts[address] += other.addressCounts[address];
+            if(other.backEdgeCounts[address] == 0) { continue; }
+
+            backEdgeCounts[address] += other.backEdgeCounts[address];
+            backEdgeTargets[address] = other.backEdgeTargets[address];
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        for(int i = 0; i < FAMILIES; i++) { familyCounts[i] = 0; }
+        for(int i = 0; i < pairCounts.length; i++) { pairCounts[i] = 0; }
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            addressCounts[address] = 0;
+            backEdgeCounts[address] = 0;
+        }
+        previousAddress = -1;
+    }
+
+    public long getExecutions(int address) { return addressCounts[address & ADDRESS_MASK]; }
+    public long getFamilyExecutions(int kind) { return familyCounts[kind]; }
+    public long getPairExecutions(int firstKind, int secondKind) { return pairCounts[firstKind * FAMILIES + secondKind]; }
+    public long getLoopIterations(int jumpAddress) { return backEdgeCounts[jumpAddress & ADDRESS_MASK]; }
+
+    @Override
+    public long getInstructionCount()
+    {
+        long total = 0;
+        for(long count : familyCounts) { total += count; }
+
+        return total;
+    }
+
+    //region REPORTS
+
+    @Override
+    public String[] getOpcodeHistogram()
+    {
+        long total = getInstructionCount();
+        return top(familyCounts, FAMILIES).mapToObj(family ->
+                String.format(Locale.ROOT, "%-12s %14d %7.3f%%", FAMILY_NAMES[family], familyCounts[family], percent(familyCounts[family], total)))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getHotAddresses() { return topAddresses(TOP_COUNT); }
+
+    @Override
+    public String[] topAddresses(int count)
+    {
+        long total = getInstructionCount();
+        return top(addressCounts, count).mapToObj(address ->
+                String.format(Locale.ROOT, "0x%03X %14d %7.3f%%", address, addressCounts[address], percent(addressCounts[address], total)))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getHotLoops()
+    {
+        long[] inside = new long[Utils.MEMORY_SIZE];
+        for(int address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            if(backEdgeCounts[address] == 0) { continue; }
+            for(int body = backEdgeTargets[address]; body <= address; body++) { inside[address] += addressCounts[body]; }
+        }
+
+        long total = getInstructionCount();
+        return top(inside, TOP_COUNT).mapToObj(address ->
+                String.format(Locale.ROOT, "0x%03X-0x%03X %14d %7.3f%% %12d iterations", backEdgeTargets[address], address,
+                        inside[address], percent(inside[address], total), backEdgeCounts[address]))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getHotPairs()
+    {
+        long total = getInstructionCount();
+        return top(pairCounts, TOP_COUNT).mapToObj(pair ->
+                String.format(Locale.ROOT, "%-12s %-12s %14d %7.3f%%", FAMILY_NAMES[pair / FAMILIES], FAMILY_NAMES[pair % FAMILIES],
+                        pairCounts[pair], percent(pairCounts[pair], total)))
+                .toArray(String[]::new);
+    }
+
+    public void writeReport(PrintStream out)
+    {
+        out.printf("%d instructions%n", getInstructionCount());
+        writeSection(out, "Opcode families", getOpcodeHistogram());
+        writeSection(out, "Hottest addresses", getHotAddresses());
+        writeSection(out, "Hot loops, by instructions run inside", getHotLoops());
+        writeSection(out, "Back to back families", getHotPairs());
+    }
+
+    public void dump(Path path) throws IOException
+    {
+        try(PrintStream out = new PrintStream(Files.newOutputStream(path)))
+        {
+            writeReport(out);
+        }
+    }
+
+    @Override
+    public String dump(String path)
+    {
+        try
+        {
+            Path file = Paths.get(path).toAbsolutePath();
+            dump(file);
+            return "Wrote " + file;
+        }
+        catch(IOException e)
+        {
+            return "Could not write " + path + ": " + e;
+        }
+    }
+
+    private static void writeSection(PrintStream out, String title, String[] lines)
+    {
+        out.println();
+        out.println("# " + title);
+        for(String line : lines) { out.println(line); }
+    }
+
+    //Indices of the largest non zero counts, largest first
+    private static IntStream top(long[] counts, int count)
+    {
+        List<Integer> indices = new ArrayList<>();
+        for(int i = 0; i < counts.length; i++) { if(counts[i] != 0) { indices.add(i); } }
+        indices.sort(Comparator.comparingLong((Integer i) -> counts[i]).reversed());
+
+        return indices.stream().limit(count).mapToInt(Integer::intValue);
+    }
+
+    private static double percent(long count, long total) { return total == 0 ? 0 : count * 100.0 / total; }
+
+    //endregion
+
+    ///Makes this profiler the one JMX clients see
+    public void register() throws JMException
+    {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(ManagementFactory.getPlatformMBeanServer().isRegistered(name)) { ManagementFactory.getPlatformMBeanServer().unregisterMBean(name); }
+
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+}
@@ -0,0 +1,22 @@
+package chip8;
+
+///What Profiler shows in JConsole or any other JMX client, registered as chip8:type=Profiler.
+///Lists are preformatted lines, most executed first, so they read well without a custom client.
+public interface ProfilerMXBean {
+    boolean isEnabled();
+    void setEnabled(boolean value);
+
+    long getInstructionCount();
+
+    ///Every opcode family that ran, with its count and share of all instructions
+    String[] getOpcodeHistogram();
+    String[] getHotAddresses();
+    String[] getHotLoops();
+    ///Families running back to back without a jump in between, the candidates for superinstructions
+    String[] getHotPairs();
+
+    String[] topAddresses(int count);
+    void reset();
+    ///Writes the full report and returns where it went
+    String dump(String path);
+}
@@ -0,0 +1,8 @@
+package chip8;
+
+///Implemented by the classes RomRecompiler generates out of a rom.
+///Runs compiled code from the current PC and returns the number of instructions retired,
+///leaving the PC on the first address it has no compiled code for.
+public interface RecompiledProgram {
+    int run(CPU cpu, Registers registers, RecompiledRom rom, int budget);
+}
@@ -0,0 +1,71 @@
+package chip8;
+
+import java.util.logging.Logger;
+
+///A recompiled program attached to a running machine.
+///It stays in charge as long as the code bytes it was compiled from are untouched, the first write changing one of them hands
+///the rest of the run back to the interpreter.
+public class RecompiledRom implements MemoryListener {
+    private static final Logger LOGGER = Logger.getLogger(RecompiledRom.class.getName());
+
+    private RecompiledProgram program;
+    private byte[] rom;
+    private boolean[] codeBytes;
+
+    private CPU cpu;
+    private Memory memory;
+    private Registers registers;
+
+    private boolean valid = true;
+    private int retiredBeforeFault;
+
+    RecompiledRom(RecompiledProgram program, byte[] rom, boolean[] codeBytes)
+    {
+        this.program = program;
+        this.rom = rom;
+        this.codeBytes = codeBytes;
+    }
+
+    public void attach(CPU cpu, Memory memory, Registers registers)
+    {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.registers = registers;
+
+        memory.addMemoryListener(this);
+    }
+
+    public boolean isValid() { return valid; }
+
+    ///Instructions that ran before the one that made the last run throw
+    public int getRetiredBeforeFault() { return retiredBeforeFault; }
+    void setRetiredBeforeFault(int value) { retiredBeforeFault = value; }
+
+    ///Returns the number of instructions retired, 0 when the PC isn't in compiled code and the caller has to interpret.
+    ///When an instruction throws, getRetiredBeforeFault tells how many ran before it.
+    public int run(int budget)
+    {
+        if(!valid) { return 0; }
+
+        try
+        {
+            return program.run(cpu, registers, this, budget);
+        }
+        catch(LinkageError e)
+        {
+            //Compiled against other handlers than these, the interpreter carries on from the instruction that failed
+            LOGGER.warning("Recompiled rom can't link, falling back to the interpreter: " + e);
+            valid = false;
+            return retiredBeforeFault;
+        }
+    }
+
+    @Override
+    public void onMemoryWrite(short address)
+    {
+        if(!codeBytes[address]) { return; }
+
+        int romOffset = address - Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+        if(memory.getMemoryAtAddress(address) != rom[romOffset]) { valid = false; }
+    }
+}
@@ -1,5 +1,7 @@
 package chip8;
 
+import java.nio.ByteBuffer;
+
 public class Registers {
     private byte[] V; /* 16 general purpose 8bit registers */
     private short I; /* 16bit register, generally used to store memory addresses */
@@ -15,6 +17,8 @@ public class Registers {
 
     public byte getVAtAddress(int address) { return V[address]; }
     public void setVAtAddress(int address, byte value) { V[address] = value; }
+    //For compiled blocks, replaced on reset so it has to be fetched again on every run
+    byte[] getV() { return V; }
 
     public short getI() { return I; }
     public void setI(short value) { I = value; }
@@ -31,6 +35,37 @@ public class Registers {
     public byte getSP() { return SP; }
     public void setSP(byte value) { SP = value; }
 
+    ///Counts both timers down by one without going under zero, called at 60Hz
+    public void tickTimers()
+    {
+        if(DT != 0) { DT--; }
+        if(ST != 0) { ST--; }
+    }
+
+    //region STATE
+    static final int STATE_SIZE = 16 + Short.BYTES + 3 + Short.BYTES;
+
+    void writeState(ByteBuffer buffer)
+    {
+        buffer.put(V, 0, 16);
+        buffer.putShort(I);
+        buffer.put(DT);
+        buffer.put(ST);
+        buffer.put(SP);
+        buffer.putShort(PC);
+    }
+
+    void readState(ByteBuffer buffer)
+    {
+        buffer.get(V, 0, 16);
+        I = buffer.getShort();
+        DT = buffer.get();
+        ST = buffer.get();
+        SP = buffer.get();
+        PC = buffer.getShort();
+    }
+    //endregion
+
     public void resetAllRegisters()
     {
         V = new byte[Utils.STACK_SIZE];
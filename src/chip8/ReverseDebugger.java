@@ -0,0 +1,261 @@
+package chip8;
+
+import exceptions.UnknownOpcodeException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+///Steps a Machine backwards by restoring the nearest earlier checkpoint and running forward again to the wanted instruction.
+///Re-execution only repeats the past if it reads the same keys, so this sits between the machine and the real input
+///and logs every change of the keypad value per read. Reads behind the newest one recorded are answered from that log.
+///Checkpoints are full machine states taken at frame ends. When all CHECKPOINT_CAPACITY slots are used every other one
+///is dropped and the interval doubles, so memory stays bounded however long the session and a seek never re-runs more
+///than one interval of instructions.
+public class ReverseDebugger implements InputSource {
+    public static final int CHECKPOINT_CAPACITY = 256;
+    public static final long FIRST_CHECKPOINT_INTERVAL = 50_000;
+
+    private final InputSource input;
+    private Machine machine;
+
+    private final byte[][] checkpoints = new byte[CHECKPOINT_CAPACITY][];
+    private final long[] checkpointCycles = new long[CHECKPOINT_CAPACITY];
+    private final long[] checkpointReads = new long[CHECKPOINT_CAPACITY];
+    private int checkpointCount;
+    private long checkpointInterval = FIRST_CHECKPOINT_INTERVAL;
+
+    //Keypad log, the key read changed to changeKeys[i] on read number changeReads[i]
+    private long[] changeReads = new long[64];
+    private byte[] changeKeys = new byte[64];
+    private int changeCount;
+    private long recordedReads;       /* Reads logged so far, reads from here on go to the real input */
+    private long readCount;           /* Reads done by the machine in its current state */
+    private int nextChange;           /* First change after readCount when replaying */
+    private int currentKey = -1;
+
+    //Watchpoint used while searching backwards for a write
+    private final MemoryListener writeWatcher = this::onWatchedWrite;
+    private int watchedAddress = -1;
+    private long instructionStart;
+    private long lastWriteCycle;
+
+    public ReverseDebugger(InputSource input)
+    {
+        this.input = input;
+    }
+
+    public long getCheckpointInterval() { return checkpointInterval; }
+    public int getCheckpointCount() { return checkpointCount; }
+
+    ///Forgets all history and starts it over from the machine's current state, after loading a rom or rewinding it
+    public void reset(Machine machine)
+    {
+        this.machine = machine;
+
+        checkpointCount = 0;
+        checkpointInterval = FIRST_CHECKPOINT_INTERVAL;
+        changeCount = 0;
+        recordedReads = 0;
+        readCount = 0;
+        nextChange = 0;
+        currentKey = -1;
+
+        takeCheckpoint();
+    }
+
+    ///Called at every frame end, takes a checkpoint once an interval has passed since the last one
+    public void onFrame()
+    {
+        if(machine.getCycleCount() - checkpointCycles[checkpointCount - 1] >= checkpointInterval) { takeCheckpoint(); }
+    }
+
+    //region SEEKING
+
+    ///Goes back one instruction. Returns false at the start of the history.
+    public boolean stepBack() throws UnknownOpcodeException
+    {
+        long target = machine.getCycleCount() - 1;
+        if(target < checkpointCycles[0]) { return false; }
+
+        seek(target);
+        return true;
+    }
+
+    ///Puts the machine in the state it had after the given number of instructions, anywhere from the oldest checkpoint on
+    public void seek(long cycle) throws UnknownOpcodeException
+    {
+        int checkpoint = checkpointCount - 1;
+        while(checkpoint > 0 && checkpointCycles[checkpoint] > cycle) { checkpoint--; }
+
+        restoreCheckpoint(checkpoint);
+        while(machine.getCycleCount() < cycle) { machine.stepSilently(); }
+    }
+
+    ///Goes back to just before the last instruction that wrote the address, the PC then points at the writer.
+    ///Returns false and leaves the machine where it was when no write happened since the oldest checkpoint.
+    public boolean runBackToWrite(int address) throws UnknownOpcodeException
+    {
+        long now = machine.getCycleCount();
+        lastWriteCycle = -1;
+
+        Memory memory = machine.getMemory();
+        memory.addMemoryListener(writeWatcher);
+        try
+        {
+            //Newest segment first, the last write in the first segment that has one is the answer
+            for(int checkpoint = checkpointCount - 1; checkpoint >= 0 && lastWriteCycle == -1; checkpoint--)
+            {
+                if(checkpointCycles[checkpoint] >= now) { continue; }
+
+                long segmentEnd = checkpoint + 1 < checkpointCount ? Math.min(now, checkpointCycles[checkpoint + 1]) : now;
+                //Restoring writes memory too, only the re-executed instructions are watched
+                restoreCheckpoint(checkpoint);
+
+                watchedAddress = address;
+                while(machine.getCycleCount() < segmentEnd)
+                {
+                    instructionStart = machine.getCycleCount();
+                    machine.stepSilently();
+                }
+                watchedAddress = -1;
+            }
+        }
+        finally
+        {
+            watchedAddress = -1;
+            memory.removeMemoryListener(writeWatcher);
+        }
+
+        seek(lastWriteCycle == -1 ? now : lastWriteCycle);
+        return lastWriteCycle != -1;
+    }
+
+    private void onWatchedWrite(short address)
+    {
+        if(address == watchedAddress) { lastWriteCycle = instructionStart; }
+    }
+
+    //endregion
+
+    //region CHECKPOINTS
+
+    private void takeCheckpoint()
+    {
+        if(checkpointCount == CHECKPOINT_CAPACITY) { thinCheckpoints(); }
+
+        if(checkpoints[checkpointCount] == null) { checkpoints[checkpointCount] = new byte[Machine.STATE_SIZE]; }
+        machine.writeState(ByteBuffer.wrap(checkpoints[checkpointCount]));
+        checkpointCycles[checkpointCount] = machine.getCycleCount();
+        checkpointReads[checkpointCount] = readCount;
+        checkpointCount++;
+    }
+
+    //Keeps every other checkpoint, the first one included, and reuses the freed buffers
+    private void thinCheckpoints()
+    {
+        int kept = 0;
+        for(int i = 0; i < checkpointCount; i += 2)
+        {
+            byte[] state = checkpoints[kept];
+            checkpoints[kept] = checkpoints[i];
+            checkpoints[i] = state;
+            checkpointCycles[kept] = checkpointCycles[i];
+            checkpointReads[kept] = checkpointReads[i];
+            kept++;
+        }
+
+        checkpointCount = kept;
+        checkpointInterval *= 2;
+    }
+
+    private void restoreCheckpoint(int checkpoint)
+    {
+        machine.readState(ByteBuffer.wrap(checkpoints[checkpoint]));
+        readCount = checkpointReads[checkpoint];
+
+        //Key as of that read, and the first change still to come
+        nextChange = upperBound(readCount);
+        currentKey = nextChange == 0 ? -1 : changeKeys[nextChange - 1];
+    }
+
+    //Index of the first change after the read
+    private int upperBound(long read)
+    {
+        int low = 0;
+        int high = changeCount;
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(changeReads[middle] <= read) { low = middle + 1; }
+            else { high = middle; }
+        }
+
+        return low;
+    }
+
+    //endregion
+
+    //region INPUT
+
+    private int read(int liveKey)
+    {
+        if(readCount < recordedReads)
+        {
+            if(nextChange < changeCount && changeReads[nextChange] == readCount) { currentKey = changeKeys[nextChange++]; }
+        }
+        else
+        {
+            if(liveKey != currentKey) { logChange(liveKey); }
+            currentKey = liveKey;
+            recordedReads++;
+        }
+
+        readCount++;
+        return currentKey;
+    }
+
+    private void logChange(int key)
+    {
+        if(changeCount == changeReads.length)
+        {
+            changeReads = Arrays.copyOf(changeReads, changeCount * 2);
+            changeKeys = Arrays.copyOf(changeKeys, changeCount * 2);
+        }
+
+        changeReads[changeCount] = readCount;
+        changeKeys[changeCount] = (byte) key;
+        changeCount++;
+        nextChange = changeCount;
+    }
+
+    private boolean isReplaying() { return readCount < recordedReads; }
+
+    @Override
+    public int getCurrentKeyPressed() { return read(isReplaying() ? 0 : input.getCurrentKeyPressed()); }
+
+    @Override
+    public int waitForKeyPress() { return read(isReplaying() ? 0 : input.waitForKeyPress()); }
+
+    @Override
+    public boolean isStepModeActive() { return input.isStepModeActive(); }
+
+    @Override
+    public void setStepModeActive(boolean value) { input.setStepModeActive(value); }
+
+    @Override
+    public void awaitStepCommand() throws InterruptedException { input.awaitStepCommand(); }
+
+    @Override
+    public boolean consumeNextInstruction() { return input.consumeNextInstruction(); }
+
+    @Override
+    public boolean consumePreviousInstruction() { return input.consumePreviousInstruction(); }
+
+    @Override
+    public EmulationSpeed getSpeed() { return input.getSpeed(); }
+
+    @Override
+    public boolean isRewindHeld() { return input.isRewindHeld(); }
+
+    //endregion
+}
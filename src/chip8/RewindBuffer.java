@@ -0,0 +1,197 @@
+package chip8;
+
+import java.nio.ByteBuffer;
+
+///Bounded history of machine states, one per recorded frame, for hold-to-rewind.
+///Only the newest state is kept whole. Every older one is stored as the XOR of it and the state after it, run length encoded:
+///most of memory is rom and most of the screen doesn't change between frames, so a delta is mostly zero runs and takes
+///tens of bytes instead of the 4.5 KB of a full state. Deltas live back to back in one preallocated ring of bytes and the
+///oldest are evicted when either the frame or the byte budget runs out, so recording allocates nothing.
+public class RewindBuffer {
+    ///Ten minutes at 60 frames per second
+    public static final int DEFAULT_MAX_FRAMES = 10 * 60 * Utils.FRAME_RATE;
+    public static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    private final byte[] arena;
+    private final int[] recordLengths; /* Ring of encoded delta lengths, oldest at firstRecord */
+    private int firstRecord;
+    private int recordCount;
+    private int arenaStart;           /* Offset of the oldest delta */
+    private int arenaUsed;
+
+    private byte[] current;           /* Newest recorded state, whole */
+    private byte[] scratch;
+    private byte[] encoded;
+    private ByteBuffer currentBuffer;
+    private ByteBuffer scratchBuffer;
+    private boolean hasCurrent;
+
+    public RewindBuffer()
+    {
+        this(DEFAULT_MAX_FRAMES, DEFAULT_MAX_BYTES);
+    }
+
+    public RewindBuffer(int maxFrames, int maxBytes)
+    {
+        arena = new byte[maxBytes];
+        recordLengths = new int[maxFrames];
+
+        current = new byte[Machine.STATE_SIZE];
+        scratch = new byte[Machine.STATE_SIZE];
+        //Worst case is one literal run over the whole state, two 3 byte varints in front of it
+        encoded = new byte[Machine.STATE_SIZE + 6];
+        currentBuffer = ByteBuffer.wrap(current);
+        scratchBuffer = ByteBuffer.wrap(scratch);
+    }
+
+    ///Number of frames the machine can be taken back
+    public int getFrameCount() { return recordCount; }
+    public int getUsedBytes() { return arenaUsed; }
+
+    ///Forgets all history, the next record starts it over
+    public void clear()
+    {
+        clearHistory();
+        hasCurrent = false;
+    }
+
+    public void record(Machine machine)
+    {
+        scratchBuffer.clear();
+        machine.writeState(scratchBuffer);
+
+        if(hasCurrent)
+        {
+            //current holds the previous state, scratch the new one
+            push(encodeDelta(current, scratch));
+        }
+
+        byte[] swap = current;
+        current = scratch;
+        scratch = swap;
+        ByteBuffer swapBuffer = currentBuffer;
+        currentBuffer = scratchBuffer;
+        scratchBuffer = swapBuffer;
+        hasCurrent = true;
+    }
+
+    ///Puts the machine back to the state recorded one frame before the newest, which becomes the newest.
+    ///Returns false when there is no history left.
+    public boolean rewind(Machine machine)
+    {
+        if(recordCount == 0) { return false; }
+
+        int length = recordLengths[(firstRecord + recordCount - 1) % recordLengths.length];
+        arenaUsed -= length;
+        recordCount--;
+
+        applyDelta((arenaStart + arenaUsed) % arena.length, length);
+
+        currentBuffer.clear();
+        machine.readState(currentBuffer);
+        return true;
+    }
+
+    //region DELTA ENCODING
+
+    //Pairs of (zero run, literal run) lengths as varints, each literal run followed by its XOR bytes. Returns the encoded length.
+    private int encodeDelta(byte[] previous, byte[] next)
+    {
+        int length = 0;
+        int i = 0;
+        while(i < next.length)
+        {
+            int zeroStart = i;
+            while(i < next.length && previous[i] == next[i]) { i++; }
+
+            int literalStart = i;
+            //A single equal byte costs less as a literal than as a new pair of runs
+            while(i < next.length && (previous[i] != next[i] || (i + 1 < next.length && previous[i + 1] != next[i + 1]))) { i++; }
+
+            length = putVarint(length, literalStart - zeroStart);
+            length = putVarint(length, i - literalStart);
+            for(int j = literalStart; j < i; j++) { encoded[length++] = (byte)(previous[j] ^ next[j]); }
+        }
+
+        return length;
+    }
+
+    private int putVarint(int position, int value)
+    {
+        while(value >= 0x80)
+        {
+            encoded[position++] = (byte)(value | 0x80);
+            value >>>= 7;
+        }
+        encoded[position++] = (byte) value;
+
+        return position;
+    }
+
+    //XORs the delta at the arena offset into current, turning it into the state before it
+    private void applyDelta(int start, int length)
+    {
+        int position = start;
+        int end = start + length;
+        int i = 0;
+        while(position < end)
+        {
+            int zeros = 0;
+            int shift = 0;
+            byte b;
+            do { b = arena[position++ % arena.length]; zeros |= (b & 0x7F) << shift; shift += 7; } while(b < 0);
+
+            int literals = 0;
+            shift = 0;
+            do { b = arena[position++ % arena.length]; literals |= (b & 0x7F) << shift; shift += 7; } while(b < 0);
+
+            i += zeros;
+            for(int j = 0; j < literals; j++) { current[i++] ^= arena[position++ % arena.length]; }
+        }
+    }
+
+    //endregion
+
+    //region RING
+
+    private void push(int length)
+    {
+        //A delta that can never fit means no history at all, better than a corrupt one
+        if(length > arena.length)
+        {
+            clearHistory();
+            return;
+        }
+
+        while(recordCount == recordLengths.length || arena.length - arenaUsed < length) { evictOldest(); }
+
+        int start = (arenaStart + arenaUsed) % arena.length;
+        int firstPart = Math.min(length, arena.length - start);
+        System.arraycopy(encoded, 0, arena, start, firstPart);
+        System.arraycopy(encoded, firstPart, arena, 0, length - firstPart);
+
+        arenaUsed += length;
+        recordLengths[(firstRecord + recordCount) % recordLengths.length] = length;
+        recordCount++;
+    }
+
+    private void evictOldest()
+    {
+        int length = recordLengths[firstRecord];
+
+        arenaStart = (arenaStart + length) % arena.length;
+        arenaUsed -= length;
+        firstRecord = (firstRecord + 1) % recordLengths.length;
+        recordCount--;
+    }
+
+    private void clearHistory()
+    {
+        firstRecord = 0;
+        recordCount = 0;
+        arenaStart = 0;
+        arenaUsed = 0;
+    }
+
+    //endregion
+}
@@ -0,0 +1,436 @@
+package chip8;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+///Ahead of time recompiler turning a rom into a Java class that calls the CPU handlers with constant operands.
+///Classes are cached on disk by the SHA-256 of the rom so later launches skip the compilation. Next to each class is
+///the SHA-256 of the source it was compiled from and of its bytes: the source is generated again on every load and a class
+///that doesn't match it, stale, truncated or edited, is compiled again instead of being defined into this package.
+///The cache directory still has to be as trusted as the classpath, anyone able to write both files can run code here.
+///Code reached only through BNNN or returns to addresses no call was seen for stays with the interpreter.
+public class RomRecompiler {
+    //Bump whenever the generated code changes so stale cached classes are ignored
+    private static final int GENERATOR_VERSION = 5;
+    //Keeps every generated method well under the 64KB bytecode limit
+    private static final int MAX_BLOCK_INSTRUCTIONS = 256;
+
+    private static final Logger LOGGER = Logger.getLogger(RomRecompiler.class.getName());
+    private static final Map<String, Class<?>> LOADED_PROGRAMS = new ConcurrentHashMap<>();
+
+    private RomRecompiler(){}
+
+    ///Returns the recompiled rom, compiling and caching it first if needed. Returns null if it can't be recompiled,
+    ///for instance when running on a JRE without a Java compiler.
+    public static RecompiledRom load(byte[] rom, Path cacheDirectory)
+    {
+        if(rom.length == 0 || rom.length > Utils.MAX_MEMORY_ADDRESS + 1 - Utils.FIRST_PROGRAM_SPACE_ADDRESS) { return null; }
+
+        try
+        {
+            String hash = sha256(rom);
+            TreeSet<Integer> entryPoints = new TreeSet<>();
+            boolean[] codeBytes = findCode(rom, entryPoints);
+
+            Class<?> programClass = loadProgramClass(hash, rom, entryPoints, cacheDirectory);
+            if(programClass == null) { return null; }
+
+            RecompiledProgram program = (RecompiledProgram) programClass.getDeclaredConstructor().newInstance();
+            return new RecompiledRom(program, rom, codeBytes);
+        }
+        catch(Exception | LinkageError e)
+        {
+            LOGGER.warning("Could not recompile rom: " + e);
+            return null;
+        }
+    }
+
+    ///Where the class compiled from this rom is cached
+    public static Path getCachedClassPath(byte[] rom, Path cacheDirectory) throws NoSuchAlgorithmException
+    {
+        return cacheDirectory.resolve(sha256(rom) + "-v" + GENERATOR_VERSION + ".class");
+    }
+
+    private static synchronized Class<?> loadProgramClass(String hash, byte[] rom, TreeSet<Integer> entryPoints, Path cacheDirectory) throws Exception
+    {
+        Class<?> programClass = LOADED_PROGRAMS.get(hash);
+        if(programClass != null) { return programClass; }
+
+        String source = generateSource(getClassName(hash), rom, entryPoints);
+        Path cachedClass = cacheDirectory.resolve(hash + "-v" + GENERATOR_VERSION + ".class");
+        Path cachedDigest = cacheDirectory.resolve(hash + "-v" + GENERATOR_VERSION + ".sha256");
+
+        byte[] classBytes = readVerifiedClass(cachedClass, cachedDigest, source);
+        if(classBytes == null)
+        {
+            classBytes = compile(getClassName(hash), source);
+            if(classBytes == null) { return null; }
+
+            Files.createDirectories(cacheDirectory);
+            writeAtomically(cachedClass, classBytes);
+            writeAtomically(cachedDigest, digest(source, classBytes).getBytes(StandardCharsets.US_ASCII));
+
+            LOGGER.info("Recompiled rom " + hash);
+        }
+
+        try
+        {
+            programClass = MethodHandles.lookup().defineClass(classBytes);
+        }
+        catch(LinkageError e)
+        {
+            //Not loadable after all, it gets rebuilt on the next launch
+            Files.deleteIfExists(cachedClass);
+            Files.deleteIfExists(cachedDigest);
+            throw e;
+        }
+
+        LOADED_PROGRAMS.put(hash, programClass);
+        return programClass;
+    }
+
+    private static String getClassName(String hash) { return "Recompiled_" + hash; }
+
+    //The cached class, or null when there's none or it wasn't compiled from this very source
+    private static byte[] readVerifiedClass(Path cachedClass, Path cachedDigest, String source) throws IOException, NoSuchAlgorithmException
+    {
+        if(!Files.exists(cachedClass) || !Files.exists(cachedDigest)) { return null; }
+
+        byte[] classBytes = Files.readAllBytes(cachedClass);
+        String expected = new String(Files.readAllBytes(cachedDigest), StandardCharsets.US_ASCII).trim();
+        if(digest(source, classBytes).equals(expected)) { return classBytes; }
+
+        LOGGER.warning("Cached " + cachedClass.getFileName() + " doesn't match its source, compiling it again");
+        return null;
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException
+    {
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(temporary, bytes);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    ///Follows jumps, calls and skips from the program start and returns which rom bytes hold reachable code.
+    ///Every address a block starts at is added to entryPoints.
+    static boolean[] findCode(byte[] rom, TreeSet<Integer> entryPoints)
+    {
+        boolean[] codeBytes = new boolean[Utils.MEMORY_SIZE];
+        int romEnd = Utils.FIRST_PROGRAM_SPACE_ADDRESS + rom.length;
+
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push((int) Utils.FIRST_PROGRAM_SPACE_ADDRESS);
+
+        while(!pending.isEmpty())
+        {
+            int entry = pending.pop();
+            //Targets outside the rom stay with the interpreter, an empty block would never retire anything
+            if(entry < Utils.FIRST_PROGRAM_SPACE_ADDRESS || entry + 1 >= romEnd || entryPoints.contains(entry)) { continue; }
+            entryPoints.add(entry);
+
+            int address = entry;
+            for(int count = 0; ; count++)
+            {
+                if(address < Utils.FIRST_PROGRAM_SPACE_ADDRESS || address + 1 >= romEnd) { break; }
+                if(count == MAX_BLOCK_INSTRUCTIONS)
+                {
+                    pending.push(address);
+                    break;
+                }
+
+                codeBytes[address] = true;
+                codeBytes[address + 1] = true;
+
+                DecodedInstruction instruction = DecodedInstruction.decode(readOpcode(rom, address));
+                if(instruction.endsBasicBlock())
+                {
+                    switch(instruction.kind)
+                    {
+                        case DecodedInstruction.JUMP:
+                            pending.push(instruction.nnn & 0xFFF);
+                            break;
+                        case DecodedInstruction.CALL:
+                            pending.push(instruction.nnn & 0xFFF);
+                            pending.push(address + 2);
+                            break;
+                        case DecodedInstruction.RET:
+                        case DecodedInstruction.JUMP_V0:
+                            //Computed targets, returns land on addresses following calls
+                            break;
+                        default:
+                            pending.push(address + 2);
+                            pending.push(address + 4);
+                            break;
+                    }
+                    break;
+                }
+
+                address += 2;
+            }
+        }
+
+        return codeBytes;
+    }
+
+    static String generateSource(String className, byte[] rom, TreeSet<Integer> entryPoints)
+    {
+        StringBuilder source = new StringBuilder();
+        source.append("package chip8;\n\n");
+        source.append("public final class ").append(className).append(" implements RecompiledProgram {\n");
+
+        source.append("    public int run(CPU cpu, Registers registers, RecompiledRom rom, int budget)\n    {\n");
+        source.append("        int retired = 0;\n");
+        source.append("        try\n        {\n");
+        source.append("            while(retired < budget && rom.isValid())\n            {\n");
+        source.append("                switch(registers.getPC())\n                {\n");
+        for(int entry : entryPoints)
+        {
+            source.append(String.format("                    case 0x%03X: retired += block_%03X(cpu, registers, rom, budget - retired); break;%n", entry, entry));
+        }
+        source.append("                    default: return retired;\n");
+        source.append("                }\n            }\n        }\n");
+        source.append("        catch(RuntimeException | LinkageError e)\n        {\n");
+        source.append("            rom.setRetiredBeforeFault(retired + rom.getRetiredBeforeFault());\n            throw e;\n        }\n\n");
+        source.append("        return retired;\n    }\n");
+
+        for(int entry : entryPoints)
+        {
+            appendBlock(source, rom, entry);
+        }
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static void appendBlock(StringBuilder source, byte[] rom, int entry)
+    {
+        int romEnd = Utils.FIRST_PROGRAM_SPACE_ADDRESS + rom.length;
+
+        source.append(String.format("%n    private static int block_%03X(CPU cpu, Registers registers, RecompiledRom rom, int budget)%n    {%n", entry));
+        source.append("        short next = 0;\n        try\n        {\n");
+
+        int address = entry;
+        int count = 0;
+        while(true)
+        {
+            if(address + 1 >= romEnd || count == MAX_BLOCK_INSTRUCTIONS)
+            {
+                source.append(String.format("            registers.setPC((short)0x%03X);%n", address));
+                source.append(String.format("            return %d;%n", count));
+                break;
+            }
+
+            DecodedInstruction instruction = DecodedInstruction.decode(readOpcode(rom, address));
+            int following = address + 2;
+            count++;
+
+            source.append(String.format("            //0x%03X: %04X%n", address, instruction.opcode & 0xFFFF));
+
+            source.append(String.format("            next = (short)0x%03X;%n", following));
+
+            if(instruction.endsBasicBlock())
+            {
+                source.append("            registers.setPC(next);\n");
+                source.append("            ").append(handlerCall(instruction)).append("\n");
+                source.append(String.format("            return %d;%n", count));
+                break;
+            }
+
+            String call = handlerCall(instruction);
+            if(!call.isEmpty()) { source.append("            ").append(call).append("\n"); }
+
+            boolean writesMemory = instruction.kind == DecodedInstruction.BCD || instruction.kind == DecodedInstruction.STORE_REGISTERS;
+            source.append(String.format("            if(budget <= %d%s) { registers.setPC(next); return %d; }%n", count, writesMemory ? " || !rom.isValid()" : "", count));
+
+            address = following;
+        }
+
+        source.append("        }\n");
+        source.append("        catch(RuntimeException e)\n        {\n");
+        source.append("            //Same PC the interpreter would leave behind, right after the faulting instruction\n");
+        source.append("            registers.setPC(next);\n");
+        source.append(String.format("            rom.setRetiredBeforeFault(((next - 0x%03X) >> 1) - 1);%n", entry));
+        source.append("            throw e;\n        }\n");
+        source.append("        catch(LinkageError e)\n        {\n");
+        source.append("            //A handler this class was compiled against is gone, the instruction didn't run\n");
+        source.append("            registers.setPC((short)(next - 2));\n");
+        source.append(String.format("            rom.setRetiredBeforeFault(((next - 0x%03X) >> 1) - 1);%n", entry));
+        source.append("            throw e;\n        }\n    }\n");
+    }
+
+    private static String handlerCall(DecodedInstruction instruction)
+    {
+        String x = String.format("(byte)0x%X", instruction.x);
+        String y = String.format("(byte)0x%X", instruction.y);
+        String n = String.format("(short)0x%X", instruction.n);
+        String kk = String.format("(byte)0x%02X", instruction.kk & 0xFF);
+        String nnn = String.format("(short)0x%03X", instruction.nnn);
+
+        switch(instruction.kind)
+        {
+            case DecodedInstruction.CLS: return "cpu.cls();";
+            case DecodedInstruction.RET: return "cpu.ret();";
+            case DecodedInstruction.JUMP: return "cpu.jump(" + nnn + ");";
+            case DecodedInstruction.CALL: return "cpu.call(" + nnn + ");";
+            case DecodedInstruction.SKIP_EQUAL_BYTE: return "cpu.skipOnEqualByte(" + x + ", " + kk + ");";
+            case DecodedInstruction.SKIP_NOT_EQUAL_BYTE: return "cpu.skipOnNonEqualByte(" + x + ", " + kk + ");";
+            case DecodedInstruction.SKIP_EQUAL_REGISTER: return "cpu.skipOnEqualRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.LOAD_BYTE: return "cpu.loadToRegister(" + x + ", " + kk + ");";
+            case DecodedInstruction.ADD_BYTE: return "cpu.addOnRegister(" + x + ", " + kk + ");";
+            case DecodedInstruction.LOAD_REGISTER: return "cpu.duplicateRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.OR: return "cpu.orRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.AND: return "cpu.andRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.XOR: return "cpu.xorRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.ADD_CARRY: return "cpu.addToRegCarry(" + x + ", " + y + ");";
+            case DecodedInstruction.SUB: return "cpu.sub(" + x + ", " + y + ");";
+            case DecodedInstruction.SHR: return "cpu.shr(" + x + ");";
+            case DecodedInstruction.SUBN: return "cpu.subn(" + x + ", " + y + ");";
+            case DecodedInstruction.SHL: return "cpu.shl(" + x + ");";
+            case DecodedInstruction.SKIP_NOT_EQUAL_REGISTER: return "cpu.sneRegister(" + x + ", " + y + ");";
+            case DecodedInstruction.LOAD_I: return "cpu.loadToI(" + nnn + ");";
+            case DecodedInstruction.JUMP_V0: return "cpu.jumpSum(" + nnn + ");";
+            case DecodedInstruction.RAND: return "cpu.rand(" + x + ", " + kk + ");";
+            case DecodedInstruction.DRAW: return "cpu.draw(" + x + ", " + y + ", " + n + ");";
+            case DecodedInstruction.SKIP_PRESSED: return "cpu.skipIfPressed(" + x + ");";
+            case DecodedInstruction.SKIP_NOT_PRESSED: return "cpu.skipIfNotPressed(" + x + ");";
+            case DecodedInstruction.LOAD_DT_TO_REGISTER: return "cpu.loadDTOnRegister(" + x + ");";
+            case DecodedInstruction.WAIT_KEY: return "cpu.getKeyPress(" + x + ");";
+            case DecodedInstruction.LOAD_REGISTER_TO_DT: return "cpu.loadRegisterOnDT(" + x + ");";
+            case DecodedInstruction.LOAD_REGISTER_TO_ST: return "cpu.loadRegisterOnST(" + x + ");";
+            case DecodedInstruction.ADD_I: return "cpu.addRegisterToI(" + x + ");";
+            case DecodedInstruction.LOAD_HEX_SPRITE: return "cpu.loadHexSpriteToI(" + x + ");";
+            case DecodedInstruction.BCD: return "cpu.loadVXasBCDtoMemory(" + x + ");";
+            case DecodedInstruction.STORE_REGISTERS: return "cpu.loadMultipleRegistersToMemory(" + x + ");";
+            case DecodedInstruction.READ_REGISTERS: return "cpu.loadMemoryToRegisters(" + x + ");";
+            default: return "";
+        }
+    }
+
+    private static byte[] compile(String className, String source) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null)
+        {
+            LOGGER.warning("No Java compiler available, roms will be interpreted");
+            return null;
+        }
+
+        Path workDirectory = Files.createTempDirectory("chip8-recompiler");
+        try
+        {
+            Path sourceFile = workDirectory.resolve(className + ".java");
+            Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int result = compiler.run(null, null, errors,
+                    "-nowarn", "-d", workDirectory.toString(),
+                    "-classpath", getClassPath(),
+                    sourceFile.toString());
+
+            if(result != 0)
+            {
+                LOGGER.warning("Recompiled rom failed to compile: " + errors);
+                return null;
+            }
+
+            return Files.readAllBytes(workDirectory.resolve("chip8").resolve(className + ".class"));
+        }
+        finally
+        {
+            try(Stream<Path> files = Files.walk(workDirectory))
+            {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    //Where the emulator's own classes were loaded from, which isn't on java.class.path under a test launcher,
+    //an IDE runner or an application embedding the emulator
+    private static String getClassPath()
+    {
+        String classPath = System.getProperty("java.class.path", "");
+
+        CodeSource source = CPU.class.getProtectionDomain().getCodeSource();
+        if(source == null || source.getLocation() == null) { return classPath; }
+
+        try
+        {
+            String location = Paths.get(source.getLocation().toURI()).toString();
+            return classPath.isEmpty() ? location : location + File.pathSeparator + classPath;
+        }
+        catch(URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e)
+        {
+            return classPath;
+        }
+    }
+
+    private static short readOpcode(byte[] rom, int address)
+    {
+        int offset = address - Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+        return (short)(rom[offset] << 8 | rom[offset + 1] & 0x00FF);
+    }
+
+    private static String sha256(byte[] rom) throws NoSuchAlgorithmException
+    {
+        return toHex(MessageDigest.getInstance("SHA-256").digest(rom));
+    }
+
+    private static String digest(String source, byte[] classBytes) throws NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        digest.update(classBytes);
+
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] digest)
+    {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest) { hex.append(String.format("%02x", b)); }
+
+        return hex.toString();
+    }
+
+    ///Recompiles the given roms (paths relative to the roms folder), or every rom when none is given, into the cache
+    public static void main(String[] args) throws IOException
+    {
+        Stream<Path> roms;
+        if(args.length > 0)
+        {
+            roms = Stream.of(args).map(title -> Paths.get(Utils.ROMS_PATH + title));
+        }
+        else
+        {
+            roms = Files.walk(Paths.get(Utils.ROMS_PATH)).filter(path -> path.toString().endsWith(".ch8")).sorted();
+        }
+
+        for(Path path : (Iterable<Path>) roms::iterator)
+        {
+            RecompiledRom recompiled = load(Files.readAllBytes(path), Paths.get(Utils.RECOMPILER_CACHE_PATH));
+            LOGGER.info((recompiled != null ? "Recompiled " : "Skipped ") + path);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package chip8;
+
+import java.util.Random;
+
+///java.util.Random with its seed exposed so it can go into a save state.
+///Same generator as Random, so a given seed yields the same numbers as before.
+class SavableRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    //Assigned by setSeed from Random's constructor, so it has no initializer
+    private long state;
+
+    SavableRandom() { super(); }
+
+    SavableRandom(long seed) { super(seed); }
+
+    @Override
+    public synchronized void setSeed(long seed)
+    {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected int next(int bits)
+    {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int)(state >>> (48 - bits));
+    }
+
+    ///The generator's raw 48 bit state, not a seed
+    long getState() { return state; }
+    void setState(long value) { state = value & MASK; }
+}
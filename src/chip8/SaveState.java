@@ -0,0 +1,90 @@
+package chip8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+///Binary snapshot of a Machine: memory, stack, screen, registers, timer phase and the CXKK generator.
+///Version 2 dropped the displayed opcode, which depends on the engine that ran the last instructions.
+///Layout is the magic, the format version, the machine state and a CRC32 of everything before it, all big endian.
+///Files are written and read through a memory mapping so a save or a load is one copy of a few kilobytes.
+public class SaveState {
+    public static final int MAGIC = 0x43385356; /* "C8SV" */
+    public static final short VERSION = 2;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    public static final int SIZE = HEADER_SIZE + Machine.STATE_SIZE + Integer.BYTES;
+
+    ///Writes SIZE bytes at the buffer's position and moves it past them
+    public static void write(Machine machine, ByteBuffer buffer)
+    {
+        int start = buffer.position();
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        machine.writeState(buffer);
+        buffer.putInt(checksum(buffer, start, buffer.position() - start));
+    }
+
+    ///Checks the whole state before touching the machine, a bad one leaves it as it was
+    public static void read(Machine machine, ByteBuffer buffer) throws IOException
+    {
+        int start = buffer.position();
+        if(buffer.remaining() < SIZE) { throw new IOException("Save state truncated, " + buffer.remaining() + " bytes"); }
+
+        int magic = buffer.getInt(start);
+        if(magic != MAGIC) { throw new IOException(String.format("Not a save state, magic %08X", magic)); }
+
+        short version = buffer.getShort(start + Integer.BYTES);
+        if(version != VERSION) { throw new IOException("Unsupported save state version " + version); }
+
+        int expected = buffer.getInt(start + SIZE - Integer.BYTES);
+        if(checksum(buffer, start, SIZE - Integer.BYTES) != expected) { throw new IOException("Save state checksum mismatch"); }
+
+        buffer.position(start + HEADER_SIZE);
+        machine.readState(buffer);
+        buffer.position(start + SIZE);
+    }
+
+    public static void save(Machine machine, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            write(machine, buffer);
+            buffer.force();
+        }
+    }
+
+    public static void load(Machine machine, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if(channel.size() != SIZE) { throw new IOException("Save state is " + channel.size() + " bytes, expected " + SIZE); }
+
+            read(machine, channel.map(FileChannel.MapMode.READ_ONLY, 0, SIZE));
+        }
+    }
+
+    ///CRC32 of the machine's current state, equal for two machines in the same state
+    public static int checksum(Machine machine)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        write(machine, buffer);
+
+        return buffer.getInt(SIZE - Integer.BYTES);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(start + length));
+
+        return (int) crc.getValue();
+    }
+}
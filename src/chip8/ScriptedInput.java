@@ -0,0 +1,52 @@
+package chip8;
+
+///Replays key presses at fixed frames, for headless runs that need input to get anywhere.
+///A script is a comma separated list of frame+duration:key, "30+5:2,90+5:5" holds key 2 from frame 30 to 34 then key 5 from 90 to 94.
+public class ScriptedInput implements InputSource {
+    private final long[] starts;
+    private final long[] ends;
+    private final int[] keys;
+
+    private long frame;
+
+    public ScriptedInput(String script)
+    {
+        String[] presses = script.isEmpty() ? new String[0] : script.split(",");
+        starts = new long[presses.length];
+        ends = new long[presses.length];
+        keys = new int[presses.length];
+
+        for(int i = 0; i < presses.length; i++)
+        {
+            String press = presses[i].trim();
+            int plus = press.indexOf('+');
+            int colon = press.indexOf(':');
+            if(plus == -1 || colon < plus) { throw new IllegalArgumentException("Expected frame+duration:key, got " + press); }
+
+            starts[i] = Long.parseLong(press.substring(0, plus));
+            ends[i] = starts[i] + Long.parseLong(press.substring(plus + 1, colon));
+            keys[i] = Integer.parseInt(press.substring(colon + 1), 16);
+        }
+    }
+
+    ///Frame the emulation is currently in, set by whoever runs the machine before each frame
+    public void setFrame(long value) { frame = value; }
+
+    @Override
+    public int getCurrentKeyPressed()
+    {
+        for(int i = 0; i < keys.length; i++)
+        {
+            if(frame >= starts[i] && frame < ends[i]) { return keys[i]; }
+        }
+
+        return -1;
+    }
+
+    ///Never blocks, FX0A keeps running until the script presses a key
+    @Override
+    public int waitForKeyPress()
+    {
+        return getCurrentKeyPressed();
+    }
+}
@@ -4,45 +4,60 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.SourceDataLine;
 
-public class Sound {
-    private boolean isPlaying;
-    private AudioFormat audioFormat;
+///javax.sound implementation of the buzzer, the line is only opened the first time a sound plays
+public class Sound implements AudioSink {
+    private volatile boolean isPlaying;
     private SourceDataLine sourceDataLine;
+    private boolean lineFailed;
     private Thread playThread;
 
     private byte[] buffer;
 
     public Sound()
     {
-        try
-        {
-            audioFormat = new AudioFormat(Utils.AUDIO_SAMPLE_RATE, Utils.AUDIO_SAMPLE_SIZE, Utils.AUDIO_CHANNELS, true, false);
-            sourceDataLine = AudioSystem.getSourceDataLine(audioFormat);
-            sourceDataLine.open(audioFormat);
-            isPlaying = false;
-            buffer = new byte[256];
+        isPlaying = false;
+        buffer = new byte[256];
+
+        for (int i = 0; i < buffer.length; i++)
+            buffer[i] = 121;
+
+        for (int i = buffer.length / 3; i < 2 * buffer.length / 3; i++)
+            buffer[i] = (byte)255-121;
+    }
 
-            for (int i = 0; i < buffer.length; i++)
-                buffer[i] = 121;
+    private boolean openLine()
+    {
+        if(sourceDataLine != null) { return true; }
+        if(lineFailed) { return false; }
 
-            for (int i = buffer.length / 3; i < 2 * buffer.length / 3; i++)
-                buffer[i] = (byte)255-121;
+        try
+        {
+            AudioFormat audioFormat = new AudioFormat(Utils.AUDIO_SAMPLE_RATE, Utils.AUDIO_SAMPLE_SIZE, Utils.AUDIO_CHANNELS, true, false);
+            SourceDataLine line = AudioSystem.getSourceDataLine(audioFormat);
+            line.open(audioFormat);
+            sourceDataLine = line;
         }
         catch(Exception e)
         {
+            //No audio device, stay silent rather than retrying on every frame
+            lineFailed = true;
             e.printStackTrace();
         }
+
+        return sourceDataLine != null;
     }
 
+    @Override
     public void playSound()
     {
-        if(isPlaying) { return; }
+        if(isPlaying || !openLine()) { return; }
         isPlaying = true;
         playThread = new PlayThread();
         playThread.setPriority(Thread.MAX_PRIORITY);
         playThread.start();
     }
 
+    @Override
     public void stopSound()
     {
         isPlaying = false;
@@ -0,0 +1,60 @@
+package chip8;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+///Window, display, debug panel and keyboard around a Chip8 core. Only built for non headless runs
+public class SwingFrontend implements FrameSink {
+    private Display display;
+    private DebugPanel debugPanel;
+    private Keyboard keyboard;
+
+    public SwingFrontend(Keyboard keyboard)
+    {
+        this.keyboard = keyboard;
+    }
+
+    ///Creates the window and wires it to the core's sinks
+    public void attach(Chip8 chip8)
+    {
+        display = new Display(chip8.getMemory());
+        debugPanel = new DebugPanel(chip8.getMemory(), chip8.getRegisters(), keyboard, chip8.getCpu());
+
+        Window window = new Window("Chip8", display, debugPanel);
+        window.addKeyListener(keyboard);
+        window.addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowClosing(WindowEvent e) { closeDisplay(); }
+
+            @Override
+            public void windowClosed(WindowEvent e) { closeDisplay(); }
+        });
+        window.setVisible(true);
+        display.start();
+
+        chip8.setFrameSink(this);
+        chip8.setAudioSink(new Sound());
+    }
+
+    private void closeDisplay()
+    {
+        try
+        {
+            display.close();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void presentFrame() { display.paintScreen(); }
+
+    @Override
+    public void presentDebug() { debugPanel.paintScreen(); }
+
+    @Override
+    public void presentSpeed(EmulationSpeed speed, long achievedFrequency) { debugPanel.setSpeed(speed, achievedFrequency); }
+}
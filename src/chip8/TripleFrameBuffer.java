@@ -0,0 +1,46 @@
+package chip8;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+///Lock-free handoff of finished frames from the emulation thread to the render thread.
+///The producer always has a back frame to write and the consumer a front frame to read, the middle one is swapped atomically
+///so neither side ever waits for the other. Frames replaced before the consumer got to them are counted as dropped.
+public class TripleFrameBuffer {
+    private static final int FRESH = 0x4; //Set on the middle index when it holds a frame the consumer hasn't seen
+
+    private final long[][] frames = new long[3][Utils.SCREEN_HEIGHT];
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int back = 0;  //Only touched by the producer
+    private int front = 2; //Only touched by the consumer
+
+    private volatile long droppedFrames;
+    private volatile long publishedFrames;
+
+    ///Producer side, copies the screen into the back frame and makes it the newest one
+    public void publish(Memory memory)
+    {
+        memory.copyScreenRows(frames[back]);
+
+        int previous = middle.getAndSet(back | FRESH);
+        if((previous & FRESH) != 0) { droppedFrames++; }
+
+        back = previous & ~FRESH;
+        publishedFrames++;
+    }
+
+    ///Consumer side, returns the newest published frame or null if nothing was published since the last call.
+    ///The returned rows stay untouched until the next call.
+    public long[] acquire()
+    {
+        if((middle.get() & FRESH) == 0) { return null; }
+
+        int previous = middle.getAndSet(front);
+        front = previous & ~FRESH;
+
+        return frames[front];
+    }
+
+    public long getDroppedFrames() { return droppedFrames; }
+    public long getPublishedFrames() { return publishedFrames; }
+}
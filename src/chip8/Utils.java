@@ -1,6 +1,5 @@
 package chip8;
 
-import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.security.Key;
 
@@ -14,20 +13,17 @@ public class Utils {
     public static final int DEBUG_PANEL_WIDTH = 640;
     public static final int DEBUG_PANEL_HEIGHT = 150;
 
-    public static final Color ON_COLOR = new Color(160, 179, 141);
-    public static final Color OFF_COLOR = new Color(41, 51, 30);
-    public static final Color WINDOW_COLOR = new Color(48, 48, 48);
-
     public static final short FIRST_PROGRAM_SPACE_ADDRESS = 0x200;
     public static final short MAX_MEMORY_ADDRESS = 0xFFF;
 
     public static final String ROMS_PATH = "roms/";
+    public static final String RECOMPILER_CACHE_PATH = "cache/recompiled/";
 
     public static final short SPRITES_STORAGE_STARTING_ADDRESS = 0x000;
 
     public static final int CPU_FREQUENCY = 500;
-    public static final int PERIOD_NANOSECONDS = 1000000000 / CPU_FREQUENCY; //2 000 000
-    public static final int CYCLES_FOR_REFRESHING = CPU_FREQUENCY / 60; //8.3333
+    public static final int FRAME_RATE = 60; //Timers and display refresh
+    public static final long NANOSECONDS_PER_SECOND = 1000000000L;
 
     public static final float AUDIO_SAMPLE_RATE = 48500f;
     public static final int AUDIO_SAMPLE_SIZE = 8;
@@ -73,7 +69,10 @@ public class Utils {
     };
 
     public static final int DEBUG_TOGGLE_STEP_MODE = KeyEvent.VK_F1;
+    public static final int SPEED_TOGGLE_KEY = KeyEvent.VK_F2;
     public static final int DEBUG_NEXT_INSTRUCTION_KEY = KeyEvent.VK_RIGHT;
+    public static final int DEBUG_PREVIOUS_INSTRUCTION_KEY = KeyEvent.VK_LEFT;
+    public static final int REWIND_KEY = KeyEvent.VK_BACK_SPACE;
 
     private Utils(){}; //Private constructor to hide the public one
 }
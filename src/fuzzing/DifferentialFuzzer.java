@@ -0,0 +1,317 @@
+package fuzzing;
+
+import chip8.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+///Runs random and mutated programs on the reference interpreter (fetchOpcode, incrementPC, decodeAndRunOpcode)
+///and on a faster engine side by side, comparing registers, stack, memory and screen each time the engine returns.
+///Engine calls get random budgets, a budget of 1 compares after every instruction. Divergences are shrunk to a minimal case.
+///Usage: DifferentialFuzzer [--cases N] [--instructions N] [--seed N] [--threads N] [--engines predecoded,blocks,compiled_blocks,recompiled]
+public class DifferentialFuzzer {
+    private static final int DEFAULT_CASES = 20_000;
+    private static final int DEFAULT_INSTRUCTIONS = 200;
+    private static final int MAX_BUDGET = 16;
+    private static final int MAX_REPORTED = 5;
+    private static final long BUDGET_SALT = 0x5DEECE66DL;
+
+    public enum Engine { PREDECODED, BLOCKS, COMPILED_BLOCKS, RECOMPILED }
+
+    public static class Divergence {
+        private final Engine engine;
+        private final FuzzCase fuzzCase;
+        private final String difference;
+
+        Divergence(Engine engine, FuzzCase fuzzCase, String difference)
+        {
+            this.engine = engine;
+            this.fuzzCase = fuzzCase;
+            this.difference = difference;
+        }
+
+        public Engine getEngine() { return engine; }
+        public FuzzCase getFuzzCase() { return fuzzCase; }
+        public String getDifference() { return difference; }
+
+        @Override
+        public String toString() { return engine + ": " + difference + "\n" + fuzzCase; }
+    }
+
+    //Same held key for FX0A, EX9E and EXA1 on both sides. Without one FX0A retries like a scripted input does.
+    private static class FixedInput implements InputSource {
+        private final int key;
+
+        FixedInput(int key) { this.key = key; }
+
+        @Override
+        public int getCurrentKeyPressed() { return key; }
+
+        @Override
+        public int waitForKeyPress() { return key; }
+    }
+
+    private final Path recompilerCache;
+    private final List<byte[]> roms;
+
+    public DifferentialFuzzer(Path recompilerCache, List<byte[]> roms)
+    {
+        this.recompilerCache = recompilerCache;
+        this.roms = roms;
+    }
+
+    ///Even seeds are random programs, odd seeds mutate a rom when there are any
+    public FuzzCase generate(long seed, int instructions)
+    {
+        if(seed % 2 == 0 || roms.isEmpty()) { return FuzzCase.random(seed, instructions); }
+
+        byte[] rom = roms.get(new Random(seed).nextInt(roms.size()));
+        return FuzzCase.mutate(seed, rom, instructions);
+    }
+
+    ///Returns what differs first, or null if the engine matched the reference all along
+    public String run(FuzzCase fuzzCase, Engine engine)
+    {
+        Memory referenceMemory = new Memory();
+        Registers referenceRegisters = new Registers();
+        CPU reference = new CPU(referenceMemory, referenceRegisters, new FixedInput(fuzzCase.key));
+
+        Memory memory = new Memory();
+        Registers registers = new Registers();
+        CPU cpu = new CPU(memory, registers, new FixedInput(fuzzCase.key));
+
+        fuzzCase.applyTo(referenceMemory, referenceRegisters);
+        fuzzCase.applyTo(memory, registers);
+        reference.setRandomSeed(fuzzCase.seed);
+        cpu.setRandomSeed(fuzzCase.seed);
+
+        BlockEngine blocks = engine == Engine.PREDECODED ? null : new BlockEngine(cpu, memory, registers);
+        //Compiled from their first run instead of only once hot
+        if(engine == Engine.COMPILED_BLOCKS) { blocks.setCompileThreshold(0); }
+        else if(blocks != null) { blocks.setCompileThreshold(BlockEngine.NEVER_COMPILE); }
+        RecompiledRom recompiledRom = null;
+        if(engine == Engine.RECOMPILED)
+        {
+            recompiledRom = RomRecompiler.load(fuzzCase.program, recompilerCache);
+            if(recompiledRom == null) { return "could not recompile"; }
+            recompiledRom.attach(cpu, memory, registers);
+        }
+
+        Random budgets = new Random(fuzzCase.seed ^ BUDGET_SALT);
+        int executed = 0;
+
+        while(executed < fuzzCase.instructions)
+        {
+            int budget = fuzzCase.budget > 0 ? fuzzCase.budget : 1 + budgets.nextInt(MAX_BUDGET);
+            int retired;
+
+            try
+            {
+                if(engine == Engine.PREDECODED) { retired = cpu.executeNextInstruction(); }
+                else
+                {
+                    retired = recompiledRom != null ? recompiledRom.run(budget) : 0;
+                    if(retired == 0) { retired = blocks.runBlock(budget); }
+                }
+            }
+            catch(Exception engineError)
+            {
+                //The faulting instruction is somewhere in this call, the reference has to fault within the same budget
+                for(int i = 0; i <= budget; i++)
+                {
+                    try
+                    {
+                        stepReference(reference);
+                    }
+                    catch(Exception referenceError)
+                    {
+                        if(referenceError.getClass() != engineError.getClass())
+                        {
+                            return String.format("after %d instructions the engine threw %s, the reference %s", executed + i, engineError, referenceError);
+                        }
+
+                        String difference = compare(referenceMemory, referenceRegisters, memory, registers);
+                        return difference == null ? null : "after " + engineError + ": " + difference;
+                    }
+                }
+
+                return String.format("the engine threw %s after %d instructions, the reference didn't", engineError, executed);
+            }
+
+            for(int i = 0; i < retired; i++)
+            {
+                try
+                {
+                    stepReference(reference);
+                }
+                catch(Exception referenceError)
+                {
+                    return String.format("the reference threw %s at instruction %d, the engine didn't", referenceError, executed + i);
+                }
+            }
+            executed += retired;
+
+            String difference = compare(referenceMemory, referenceRegisters, memory, registers);
+            if(difference != null) { return "after " + executed + " instructions: " + difference; }
+        }
+
+        return null;
+    }
+
+    private static void stepReference(CPU reference) throws Exception
+    {
+        reference.fetchOpcode();
+        reference.incrementPC();
+        reference.decodeAndRunOpcode();
+    }
+
+    private static String compare(Memory referenceMemory, Registers referenceRegisters, Memory memory, Registers registers)
+    {
+        if(referenceRegisters.getPC() != registers.getPC()) { return String.format("PC reference %03X engine %03X", referenceRegisters.getPC(), registers.getPC()); }
+        if(referenceRegisters.getI() != registers.getI()) { return String.format("I reference %03X engine %03X", referenceRegisters.getI(), registers.getI()); }
+        if(referenceRegisters.getSP() != registers.getSP()) { return String.format("SP reference %d engine %d", referenceRegisters.getSP(), registers.getSP()); }
+        if(referenceRegisters.getDT() != registers.getDT()) { return String.format("DT reference %02X engine %02X", referenceRegisters.getDT(), registers.getDT()); }
+        if(referenceRegisters.getST() != registers.getST()) { return String.format("ST reference %02X engine %02X", referenceRegisters.getST(), registers.getST()); }
+
+        for(int i = 0; i < 16; i++)
+        {
+            if(referenceRegisters.getVAtAddress(i) != registers.getVAtAddress(i))
+            {
+                return String.format("V%X reference %02X engine %02X", i, referenceRegisters.getVAtAddress(i), registers.getVAtAddress(i));
+            }
+        }
+
+        for(byte i = 0; i < Utils.STACK_SIZE; i++)
+        {
+            if(referenceMemory.getStackAtValue(i) != memory.getStackAtValue(i))
+            {
+                return String.format("stack[%d] reference %03X engine %03X", i, referenceMemory.getStackAtValue(i), memory.getStackAtValue(i));
+            }
+        }
+
+        for(short address = 0; address < Utils.MEMORY_SIZE; address++)
+        {
+            if(referenceMemory.getMemoryAtAddress(address) != memory.getMemoryAtAddress(address))
+            {
+                return String.format("memory %03X reference %02X engine %02X", address, referenceMemory.getMemoryAtAddress(address), memory.getMemoryAtAddress(address));
+            }
+        }
+
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++)
+        {
+            if(referenceMemory.getScreenRow(y) != memory.getScreenRow(y))
+            {
+                return String.format("screen row %d reference %016X engine %016X", y, referenceMemory.getScreenRow(y), memory.getScreenRow(y));
+            }
+        }
+
+        return null;
+    }
+
+    ///Keeps taking the first simpler variant that still diverges until none does
+    public Divergence shrink(Divergence divergence)
+    {
+        FuzzCase smallest = divergence.getFuzzCase();
+        String difference = divergence.getDifference();
+
+        boolean shrunk = true;
+        while(shrunk)
+        {
+            shrunk = false;
+            for(FuzzCase candidate : smallest.shrinkCandidates())
+            {
+                String candidateDifference = run(candidate, divergence.getEngine());
+                if(candidateDifference != null)
+                {
+                    smallest = candidate;
+                    difference = candidateDifference;
+                    shrunk = true;
+                    break;
+                }
+            }
+        }
+
+        return new Divergence(divergence.getEngine(), smallest, difference);
+    }
+
+    public List<Divergence> fuzz(long firstSeed, int cases, int instructions, List<Engine> engines, int threads) throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            return pool.submit(() -> LongStream.range(firstSeed, firstSeed + cases).parallel()
+                    .boxed()
+                    .flatMap(seed -> {
+                        FuzzCase fuzzCase = generate(seed, instructions);
+                        return engines.stream().map(engine -> {
+                            String difference = run(fuzzCase, engine);
+                            return difference == null ? null : new Divergence(engine, fuzzCase, difference);
+                        });
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())).get();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    public static List<byte[]> loadRoms(Path root) throws IOException
+    {
+        List<byte[]> roms = new ArrayList<>();
+        for(Path rom : BatchRunner.findRoms(root)) { roms.add(Files.readAllBytes(rom)); }
+
+        return roms;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int cases = DEFAULT_CASES;
+        int instructions = DEFAULT_INSTRUCTIONS;
+        long seed = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Engine> engines = List.of(Engine.PREDECODED, Engine.BLOCKS, Engine.COMPILED_BLOCKS);
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch(args[i])
+            {
+                case "--cases": cases = Integer.parseInt(args[++i]); break;
+                case "--instructions": instructions = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--engines":
+                    engines = new ArrayList<>();
+                    for(String engine : args[++i].split(",")) { engines.add(Engine.valueOf(engine.trim().toUpperCase())); }
+                    break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        //Compiled cases stay out of the emulator's own cache
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(Files.createTempDirectory("chip8-fuzz"), loadRoms(Paths.get(Utils.ROMS_PATH)));
+
+        long start = System.nanoTime();
+        List<Divergence> divergences = fuzzer.fuzz(seed, cases, instructions, engines, threads);
+        System.out.printf("%d cases from seed %d on %s in %.1f s, %d divergences%n",
+                cases, seed, engines, (System.nanoTime() - start) / 1e9, divergences.size());
+
+        for(Divergence divergence : divergences.subList(0, Math.min(MAX_REPORTED, divergences.size())))
+        {
+            System.out.println();
+            System.out.println(fuzzer.shrink(divergence));
+        }
+
+        if(!divergences.isEmpty()) { System.exit(1); }
+    }
+}
@@ -0,0 +1,245 @@
+package fuzzing;
+
+import chip8.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+///A program plus the machine state it starts from. Immutable, shrinking builds smaller copies.
+public class FuzzCase {
+    static final int MAX_PROGRAM_LENGTH = 0x100;
+    static final short DATA_ADDRESS = 0x300;
+    static final int DATA_LENGTH = 0x100;
+    //Does nothing on every engine, 0NNN other than 00E0 and 00EE
+    private static final short NOP = 0x0001;
+
+    final long seed;
+    final byte[] program;
+    final byte[] data;
+    final byte[] V;
+    final short I;
+    final byte SP;
+    final short[] stack;
+    final byte DT;
+    final byte ST;
+    final long[] screen;
+    final int key;            //Held key, -1 for none
+    final int instructions;   //How many instructions to run
+    final int budget;         //Instructions per engine call, 0 for random budgets drawn from the seed
+
+    private FuzzCase(long seed, byte[] program, byte[] data, byte[] V, short I, byte SP, short[] stack, byte DT, byte ST,
+                     long[] screen, int key, int instructions, int budget)
+    {
+        this.seed = seed;
+        this.program = program;
+        this.data = data;
+        this.V = V;
+        this.I = I;
+        this.SP = SP;
+        this.stack = stack;
+        this.DT = DT;
+        this.ST = ST;
+        this.screen = screen;
+        this.key = key;
+        this.instructions = instructions;
+        this.budget = budget;
+    }
+
+    //region GENERATION
+
+    ///Random opcodes from every family, jumps and calls land inside the program, sometimes on an odd address
+    public static FuzzCase random(long seed, int instructions)
+    {
+        Random random = new Random(seed);
+
+        byte[] program = new byte[2 + 2 * random.nextInt(MAX_PROGRAM_LENGTH / 2 - 1)];
+        for(int address = 0; address < program.length; address += 2)
+        {
+            int opcode = randomOpcode(random, program.length);
+            program[address] = (byte)(opcode >> 8);
+            program[address + 1] = (byte) opcode;
+        }
+
+        return randomState(random, seed, program, instructions);
+    }
+
+    ///A slice of a real rom with a few bytes changed
+    public static FuzzCase mutate(long seed, byte[] rom, int instructions)
+    {
+        Random random = new Random(seed);
+
+        byte[] program = Arrays.copyOf(rom, Math.min(rom.length, MAX_PROGRAM_LENGTH));
+        int mutations = 1 + random.nextInt(8);
+        for(int i = 0; i < mutations; i++)
+        {
+            int address = random.nextInt(program.length) & ~1;
+            if(random.nextBoolean() && address + 1 < program.length)
+            {
+                int opcode = randomOpcode(random, program.length);
+                program[address] = (byte)(opcode >> 8);
+                program[address + 1] = (byte) opcode;
+            }
+            else
+            {
+                program[random.nextInt(program.length)] = (byte) random.nextInt(256);
+            }
+        }
+
+        return randomState(random, seed, program, instructions);
+    }
+
+    private static FuzzCase randomState(Random random, long seed, byte[] program, int instructions)
+    {
+        byte[] data = new byte[DATA_LENGTH];
+        random.nextBytes(data);
+
+        byte[] V = new byte[16];
+        random.nextBytes(V);
+
+        //Mostly somewhere sensible, sometimes anywhere to reach the edges of memory
+        short I = (short)(random.nextInt(4) == 0 ? random.nextInt(Utils.MEMORY_SIZE) : DATA_ADDRESS + random.nextInt(DATA_LENGTH - 16));
+
+        short[] stack = new short[Utils.STACK_SIZE];
+        for(int i = 0; i < stack.length; i++) { stack[i] = (short)(Utils.FIRST_PROGRAM_SPACE_ADDRESS + random.nextInt(program.length)); }
+
+        long[] screen = new long[Utils.SCREEN_HEIGHT];
+        for(int y = 0; y < screen.length; y++) { screen[y] = random.nextInt(3) == 0 ? random.nextLong() : 0L; }
+
+        return new FuzzCase(seed, program, data, V, I, (byte) random.nextInt(Utils.STACK_SIZE - 1), stack,
+                (byte) random.nextInt(256), (byte) random.nextInt(256), screen, random.nextInt(17) - 1, instructions, 0);
+    }
+
+    private static int randomOpcode(Random random, int programLength)
+    {
+        int x = random.nextInt(16) << 8;
+        int y = random.nextInt(16) << 4;
+        int kk = random.nextInt(256);
+        int n = random.nextInt(16);
+        int target = Utils.FIRST_PROGRAM_SPACE_ADDRESS + (random.nextInt(programLength) & (random.nextInt(8) == 0 ? ~0 : ~1));
+
+        switch(random.nextInt(24))
+        {
+            case 0: return random.nextBoolean() ? 0x00E0 : 0x00EE;
+            case 1: return 0x1000 | target;
+            case 2: return 0x2000 | target;
+            case 3: return 0x3000 | x | kk;
+            case 4: return 0x4000 | x | kk;
+            case 5: return 0x5000 | x | y;
+            case 6: case 7: return 0x6000 | x | kk;
+            case 8: case 9: return 0x7000 | x | kk;
+            case 10: case 11: return 0x8000 | x | y | new int[]{ 0x0, 0x1, 0x2, 0x3, 0x4, 0x5, 0x6, 0x7, 0xE }[random.nextInt(9)];
+            case 12: return 0x9000 | x | y;
+            case 13: return 0xA000 | (DATA_ADDRESS + random.nextInt(DATA_LENGTH));
+            case 14: return 0xB000 | (target - Utils.FIRST_PROGRAM_SPACE_ADDRESS);
+            case 15: return 0xC000 | x | kk;
+            case 16: case 17: return 0xD000 | x | y | n;
+            case 18: return 0xE000 | x | (random.nextBoolean() ? 0x9E : 0xA1);
+            case 19: case 20: case 21: return 0xF000 | x | new int[]{ 0x07, 0x0A, 0x15, 0x18, 0x1E, 0x29, 0x33, 0x55, 0x65 }[random.nextInt(9)];
+            //Anything at all, unknown sub-opcodes included
+            default: return random.nextInt(0x10000);
+        }
+    }
+
+    //endregion
+
+    ///Loads the program, data and registers into a fresh machine
+    void applyTo(Memory memory, Registers registers)
+    {
+        for(int i = 0; i < program.length; i++) { memory.setMemoryAtAddress((short)(Utils.FIRST_PROGRAM_SPACE_ADDRESS + i), program[i]); }
+        for(int i = 0; i < data.length; i++) { memory.setMemoryAtAddress((short)(DATA_ADDRESS + i), data[i]); }
+        for(int i = 0; i < V.length; i++) { registers.setVAtAddress(i, V[i]); }
+        for(int i = 0; i < stack.length; i++) { memory.setStackAtValue((byte) i, stack[i]); }
+        for(int y = 0; y < screen.length; y++) { memory.setScreenRow(y, screen[y]); }
+
+        registers.setI(I);
+        registers.setSP(SP);
+        registers.setDT(DT);
+        registers.setST(ST);
+        registers.setPC(Utils.FIRST_PROGRAM_SPACE_ADDRESS);
+    }
+
+    //region SHRINKING
+
+    ///Simpler variants of this case, most promising first
+    List<FuzzCase> shrinkCandidates()
+    {
+        List<FuzzCase> candidates = new ArrayList<>();
+
+        if(budget != 1) { candidates.add(withBudget(1)); }
+        if(instructions > 1)
+        {
+            candidates.add(withInstructions(instructions / 2));
+            candidates.add(withInstructions(instructions - 1));
+        }
+        if(program.length > 2)
+        {
+            candidates.add(withProgram(Arrays.copyOf(program, (program.length / 2 + 1) & ~1)));
+            candidates.add(withProgram(Arrays.copyOf(program, program.length - 2)));
+        }
+        for(int address = program.length - 2; address >= 0; address -= 2)
+        {
+            if(program[address] == (byte)(NOP >> 8) && program[address + 1] == (byte) NOP) { continue; }
+
+            byte[] nopped = program.clone();
+            nopped[address] = (byte)(NOP >> 8);
+            nopped[address + 1] = (byte) NOP;
+            candidates.add(withProgram(nopped));
+        }
+        for(int i = 0; i < V.length; i++)
+        {
+            if(V[i] == 0) { continue; }
+
+            byte[] cleared = V.clone();
+            cleared[i] = 0;
+            candidates.add(new FuzzCase(seed, program, data, cleared, I, SP, stack, DT, ST, screen, key, instructions, budget));
+        }
+        if(!isZero(data)) { candidates.add(new FuzzCase(seed, program, new byte[DATA_LENGTH], V, I, SP, stack, DT, ST, screen, key, instructions, budget)); }
+        if(!isZero(screen)) { candidates.add(new FuzzCase(seed, program, data, V, I, SP, stack, DT, ST, new long[Utils.SCREEN_HEIGHT], key, instructions, budget)); }
+        if(SP != 0 || !isZero(stack)) { candidates.add(new FuzzCase(seed, program, data, V, I, (byte) 0, new short[Utils.STACK_SIZE], DT, ST, screen, key, instructions, budget)); }
+        if(DT != 0 || ST != 0) { candidates.add(new FuzzCase(seed, program, data, V, I, SP, stack, (byte) 0, (byte) 0, screen, key, instructions, budget)); }
+        if(I != DATA_ADDRESS) { candidates.add(new FuzzCase(seed, program, data, V, DATA_ADDRESS, SP, stack, DT, ST, screen, key, instructions, budget)); }
+        if(key != -1) { candidates.add(new FuzzCase(seed, program, data, V, I, SP, stack, DT, ST, screen, -1, instructions, budget)); }
+
+        return candidates;
+    }
+
+    private FuzzCase withBudget(int value) { return new FuzzCase(seed, program, data, V, I, SP, stack, DT, ST, screen, key, instructions, value); }
+    private FuzzCase withInstructions(int value) { return new FuzzCase(seed, program, data, V, I, SP, stack, DT, ST, screen, key, value, budget); }
+    private FuzzCase withProgram(byte[] value) { return new FuzzCase(seed, value, data, V, I, SP, stack, DT, ST, screen, key, instructions, budget); }
+
+    private static boolean isZero(byte[] values) { for(byte value : values) { if(value != 0) { return false; } } return true; }
+    private static boolean isZero(short[] values) { for(short value : values) { if(value != 0) { return false; } } return true; }
+    private static boolean isZero(long[] values) { for(long value : values) { if(value != 0) { return false; } } return true; }
+
+    //endregion
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("seed %d, %d instructions, budget %s, key %d%n", seed, instructions, budget == 0 ? "random" : budget, key));
+
+        text.append("V");
+        for(byte value : V) { text.append(String.format(" %02X", value)); }
+        text.append(String.format("  I %03X  SP %d  DT %02X  ST %02X%n", I, SP, DT, ST));
+
+        text.append("stack");
+        for(short value : stack) { text.append(String.format(" %03X", value)); }
+        text.append('\n');
+
+        text.append("program");
+        for(int address = 0; address + 1 < program.length; address += 2)
+        {
+            text.append(String.format(" %02X%02X", program[address], program[address + 1]));
+        }
+        if(program.length % 2 != 0) { text.append(String.format(" %02X", program[program.length - 1])); }
+        text.append('\n');
+
+        if(!isZero(data)) { text.append("data at 0x300 not shown, seed reproduces it\n"); }
+        if(!isZero(screen)) { text.append("screen not blank, seed reproduces it\n"); }
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTests {
+
+    @Test
+    void stopsOnSelfJump(@TempDir Path root) throws IOException
+    {
+        //Draws the 0 font sprite then jumps to itself
+        Path rom = Files.write(root.resolve("halt.ch8"), new byte[]{ (byte)0xA0, 0x00, (byte)0xD0, 0x05, 0x12, 0x04 });
+
+        BatchRunner runner = new BatchRunner();
+        runner.setFrames(100);
+        BatchRunner.Result result = runner.run(root, rom);
+
+        assertNull(result.getError());
+        assertTrue(result.isHalted());
+        assertEquals(1, result.getFrames());
+        assertEquals("halt.ch8", result.getRom());
+    }
+
+    @Test
+    void sameRomSameHash(@TempDir Path root) throws IOException
+    {
+        //Random sprite address in the font area, drawn forever
+        Path rom = Files.write(root.resolve("random.ch8"), new byte[]{ (byte)0xC0, 0x0F, (byte)0xF0, 0x29, (byte)0xD1, 0x15, 0x12, 0x00 });
+
+        BatchRunner runner = new BatchRunner();
+        runner.setFrames(10);
+
+        assertEquals(runner.run(root, rom).getScreenHash(), runner.run(root, rom).getScreenHash());
+        assertEquals(10, runner.run(root, rom).getFrames());
+    }
+}
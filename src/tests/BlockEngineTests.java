@@ -0,0 +1,128 @@
+package tests;
+
+import chip8.*;
+import exceptions.UnknownOpcodeException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockEngineTests {
+
+    Memory memory = new Memory();
+    Registers registers = new Registers();
+    Keyboard keyboard = new Keyboard();
+    CPU cpu = new CPU(memory, registers, keyboard);
+    BlockEngine blockEngine = new BlockEngine(cpu, memory, registers);
+
+    private void loadProgram(int... opcodes)
+    {
+        short address = Utils.FIRST_PROGRAM_SPACE_ADDRESS;
+        for(int opcode : opcodes)
+        {
+            memory.setMemoryAtAddress(address, (byte)(opcode >> 8));
+            memory.setMemoryAtAddress((short)(address + 1), (byte)opcode);
+            address += 2;
+        }
+    }
+
+    @Test
+    void runBlockUntilJump() throws UnknownOpcodeException
+    {
+        loadProgram(0x6105, 0x6203, 0x8124, 0x1208);
+
+        int retired = blockEngine.runBlock(100);
+
+        assertEquals(4, retired);
+        assertEquals(0x08, registers.getVAtAddress(0x1));
+        assertEquals(0x208, registers.getPC());
+    }
+
+    @Test
+    void runBlockStopsOnBudget() throws UnknownOpcodeException
+    {
+        loadProgram(0x6105, 0x6203, 0x8124, 0x1208);
+
+        int retired = blockEngine.runBlock(2);
+
+        assertEquals(2, retired);
+        assertEquals(0x05, registers.getVAtAddress(0x1));
+        assertEquals(0x204, registers.getPC());
+    }
+
+    @Test
+    void selfModifyingBlock() throws UnknownOpcodeException
+    {
+        //Writes 0x6322 over the instruction at 0x206 with FX55 before reaching it
+        loadProgram(0x6063, 0x6122, 0xF155, 0x63FF, 0x1208);
+        registers.setI((short) 0x206);
+
+        int retired = blockEngine.run(5);
+
+        assertEquals(5, retired);
+        assertEquals(0x22, registers.getVAtAddress(0x3));
+        assertEquals(0x208, registers.getPC());
+    }
+
+    @Test
+    void compiledBlockKeepsRegistersInStep() throws UnknownOpcodeException
+    {
+        //V1 = 5 + 3 with carry, V2 = V1 - V0, V1 >>= 1, then jump
+        loadProgram(0x6105, 0x6203, 0x8124, 0x60FF, 0x8205, 0x8106, 0x1200);
+        blockEngine.setCompileThreshold(0);
+
+        int retired = blockEngine.runBlock(100);
+
+        assertEquals(1, blockEngine.getCompiledBlockCount());
+        assertEquals(7, retired);
+        assertEquals(0x04, registers.getVAtAddress(0x1));
+        assertEquals(0x04, registers.getVAtAddress(0x2));
+        assertEquals(0x00, registers.getVAtAddress(0xF));
+        assertEquals(0x200, registers.getPC());
+        assertEquals(0x1200, cpu.getCurrentOpcode());
+    }
+
+    @Test
+    void compiledBlockStopsOnBudget() throws UnknownOpcodeException
+    {
+        loadProgram(0x6105, 0x6203, 0x8124, 0x1208);
+        blockEngine.setCompileThreshold(0);
+
+        int retired = blockEngine.runBlock(2);
+
+        assertEquals(2, retired);
+        assertEquals(0x05, registers.getVAtAddress(0x1));
+        assertEquals(0x03, registers.getVAtAddress(0x2));
+        assertEquals(0x204, registers.getPC());
+        assertEquals(0x6203, cpu.getCurrentOpcode());
+    }
+
+    @Test
+    void compiledSelfModifyingBlock() throws UnknownOpcodeException
+    {
+        loadProgram(0x6063, 0x6122, 0xF155, 0x63FF, 0x1208);
+        registers.setI((short) 0x206);
+        blockEngine.setCompileThreshold(0);
+
+        int retired = blockEngine.run(5);
+
+        assertEquals(5, retired);
+        assertEquals(0x22, registers.getVAtAddress(0x3));
+        assertEquals(0x208, registers.getPC());
+    }
+
+    @Test
+    void compiledBlockCountsInstructionsBeforeFault()
+    {
+        //FX65 reading past the end of memory throws on the third instruction
+        loadProgram(0x6001, 0x6102, 0xAFFF, 0xFF65, 0x1200);
+        blockEngine.setCompileThreshold(0);
+
+        assertThrows(IllegalArgumentException.class, () -> blockEngine.runBlock(100));
+
+        assertEquals(3, blockEngine.getRetiredBeforeFault());
+        //V0 was read from 0xFFF before the read past it threw, like the interpreter does
+        assertEquals(0x00, registers.getVAtAddress(0x0));
+        assertEquals(0x02, registers.getVAtAddress(0x1));
+        assertEquals(0x208, registers.getPC());
+    }
+}
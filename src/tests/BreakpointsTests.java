@@ -0,0 +1,112 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.Fixtures.*;
+
+class BreakpointsTests {
+    @Test
+    void stopsInFrontOfPcBreakpointAndResumes() throws Exception
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        machine.getBreakpoints().addBreakpoint(0x206);
+
+        assertEquals(3, machine.runCycles(100));
+        assertEquals(0x206, machine.getRegisters().getPC());
+        assertNotNull(machine.getBreakReason());
+
+        //Once round the loop and back to the same breakpoint
+        assertEquals(3, machine.runCycles(100));
+        assertEquals(0x206, machine.getRegisters().getPC());
+        assertEquals(1, machine.getRegisters().getVAtAddress(1));
+
+        machine.getBreakpoints().removeBreakpoint(0x206);
+        assertEquals(100, machine.runCycles(100));
+        assertNull(machine.getBreakReason());
+    }
+
+    @Test
+    void stopsOnRegisterCondition() throws Exception
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        machine.getBreakpoints().addBreakpoint(-1, Breakpoints.registerEquals(1, 5));
+
+        machine.runCycles(1000);
+        assertNotNull(machine.getBreakReason());
+        assertEquals(5, machine.getRegisters().getVAtAddress(1));
+        assertEquals(0x208, machine.getRegisters().getPC());
+    }
+
+    @Test
+    void removesConditionalBreakpoint() throws Exception
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        Predicate<Registers> fifth = Breakpoints.registerEquals(1, 5);
+        machine.getBreakpoints().addBreakpoint(0x208, fifth);
+
+        //Another condition or address doesn't match the one added
+        machine.getBreakpoints().removeBreakpoint(-1, fifth);
+        machine.getBreakpoints().removeBreakpoint(0x208, Breakpoints.registerEquals(1, 5));
+        assertTrue(machine.getBreakpoints().isArmed());
+
+        machine.getBreakpoints().removeBreakpoint(0x208, fifth);
+        assertFalse(machine.getBreakpoints().isArmed());
+        assertEquals(1000, machine.runCycles(1000));
+        assertNull(machine.getBreakReason());
+    }
+
+    @Test
+    void watchpointStopsBeforeTheWrite() throws Exception
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        machine.getBreakpoints().addWriteWatchpoint(0x301);
+        machine.getBreakpoints().addReadWatchpoint(0x301);
+
+        machine.runCycles(1000);
+        assertEquals("write of 0x301 at 0x208", machine.getBreakReason());
+        assertEquals(0, machine.getMemory().getMemoryAtAddress((short) 0x301));
+    }
+
+    @Test
+    void disarmedRunMatchesPlainRun() throws Exception
+    {
+        Machine plain = loadMachine(COUNTER_ROM);
+        Machine armed = loadMachine(COUNTER_ROM);
+        armed.getBreakpoints().addBreakpoint(0x300);
+
+        plain.runCycles(5000);
+        armed.runCycles(2500);
+        armed.getBreakpoints().clear();
+        armed.runCycles(2500);
+
+        assertEquals(SaveState.checksum(plain), SaveState.checksum(armed));
+    }
+
+    @Test
+    void pausedLoopBlocksUntilStopped() throws Exception
+    {
+        Keyboard keyboard = new Keyboard();
+        Chip8 chip8 = new Chip8(keyboard);
+        chip8.loadRom(COUNTER_ROM);
+        chip8.getMachine().getBreakpoints().addBreakpoint(0x208);
+
+        Thread loop = new Thread(chip8::emulationLoop);
+        loop.start();
+
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while(!keyboard.isStepModeActive() && System.nanoTime() < deadline) { Thread.sleep(5); }
+        assertTrue(keyboard.isStepModeActive());
+        assertEquals(0x208, chip8.getRegisters().getPC());
+
+        while(loop.getState() != Thread.State.WAITING && System.nanoTime() < deadline) { Thread.sleep(5); }
+        assertEquals(Thread.State.WAITING, loop.getState());
+
+        chip8.stop();
+        loop.join(5000);
+        assertFalse(loop.isAlive());
+    }
+}
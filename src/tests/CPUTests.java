@@ -875,6 +875,90 @@ class CPUTests {
         }
     }
 
+    /** Predecoded execution **/
+    @Test
+    void executeNextInstruction() throws UnknownOpcodeException
+    {
+        registers.resetAllRegisters();
+
+        memory.setMemoryAtAddress((short) 0x200, (byte)0x63);
+        memory.setMemoryAtAddress((short) 0x201, (byte)0x2A);
+        int executed = cpu.executeNextInstruction();
+
+        assertEquals(1, executed);
+        assertEquals(0x2A, registers.getVAtAddress(0x3));
+        assertEquals(0x202, registers.getPC());
+        assertEquals((short)0x632A, cpu.getCurrentOpcode());
+    }
+
+    ///ANNN DXYN
+    @Test
+    void fusedLoadIAndDraw() throws UnknownOpcodeException
+    {
+        registers.resetAllRegisters();
+
+        registers.setVAtAddress(0x1, (byte) 0xA);
+        registers.setVAtAddress(0x2, (byte) 0xA);
+
+        //Load the address of the A sprite then display it
+        memory.setMemoryAtAddress((short) 0x200, (byte)0xA0);
+        memory.setMemoryAtAddress((short) 0x201, (byte)0x32);
+        memory.setMemoryAtAddress((short) 0x202, (byte)0xD1);
+        memory.setMemoryAtAddress((short) 0x203, (byte)0x25);
+        int executed = cpu.executeNextInstruction();
+
+        assertEquals(2, executed);
+        assertEquals(0x204, registers.getPC());
+        assertEquals(0x032, registers.getI());
+        assertTrue(isSameByte((byte)0xF0,10,10));
+        assertTrue(isSameByte((byte)0x90,10,14));
+    }
+
+    ///7XKK 3XKK
+    @Test
+    void fusedAddAndSkip() throws UnknownOpcodeException
+    {
+        registers.resetAllRegisters();
+
+        registers.setVAtAddress(0x4, (byte) 0x09);
+
+        memory.setMemoryAtAddress((short) 0x200, (byte)0x74);
+        memory.setMemoryAtAddress((short) 0x201, (byte)0x01);
+        memory.setMemoryAtAddress((short) 0x202, (byte)0x34);
+        memory.setMemoryAtAddress((short) 0x203, (byte)0x0A);
+        int executed = cpu.executeNextInstruction();
+
+        assertEquals(2, executed);
+        assertEquals(0x0A, registers.getVAtAddress(0x4));
+        assertEquals(0x206, registers.getPC());
+    }
+
+    ///FX55 overwriting the next instruction
+    @Test
+    void selfModifyingCodeInvalidatesCache() throws UnknownOpcodeException
+    {
+        registers.resetAllRegisters();
+
+        memory.setMemoryAtAddress((short) 0x202, (byte)0x65);
+        memory.setMemoryAtAddress((short) 0x203, (byte)0x11);
+        registers.setPC((short) 0x202);
+        cpu.executeNextInstruction();
+        assertEquals(0x11, registers.getVAtAddress(0x5));
+
+        //Rewrite 0x202 into 6522 with FX55 then run it again
+        registers.setVAtAddress(0x0, (byte) 0x65);
+        registers.setVAtAddress(0x1, (byte) 0x22);
+        registers.setI((short) 0x202);
+        memory.setMemoryAtAddress((short) 0x200, (byte)0xF1);
+        memory.setMemoryAtAddress((short) 0x201, (byte)0x55);
+        registers.setPC((short) 0x200);
+        cpu.executeNextInstruction();
+        cpu.executeNextInstruction();
+
+        assertEquals(0x22, registers.getVAtAddress(0x5));
+        assertEquals(0x204, registers.getPC());
+    }
+
     //Taken from ismael rodriguez's implementation
     private boolean isSameByte(byte b, int x, int y)
     {
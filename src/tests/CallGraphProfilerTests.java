@@ -0,0 +1,70 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.Fixtures.*;
+
+class CallGraphProfilerTests {
+    //Calls 0x208 twice then halts, 0x208 loads V0 and calls 0x20E, which adds to V0
+    private static final byte[] ROM = new byte[]{
+            0x22, 0x08, 0x22, 0x08, 0x12, 0x04, 0x00, 0x00,
+            0x60, 0x01, 0x22, 0x0E, 0x00, (byte)0xEE,
+            0x70, 0x01, 0x00, (byte)0xEE };
+
+    private static Machine loadTracedMachine()
+    {
+        Machine machine = loadMachine(ROM);
+        machine.getCallGraph().setEnabled(true);
+        return machine;
+    }
+
+    @Test
+    void attributesInstructionsToCallPaths() throws Exception
+    {
+        Machine machine = loadTracedMachine();
+        machine.runCycles(100);
+
+        CallGraphProfiler callGraph = machine.getCallGraph();
+        //The calls count in the caller, the returns in the callee
+        assertEquals(6, callGraph.getSelfCount(0x208));
+        assertEquals(4, callGraph.getSelfCount(0x208, 0x20E));
+        assertEquals(90, callGraph.getSelfCount());
+        assertEquals(0, callGraph.getSelfCount(0x20E));
+    }
+
+    @Test
+    void writesCollapsedStacks() throws Exception
+    {
+        Machine machine = loadTracedMachine();
+        machine.runCycles(100);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        machine.getCallGraph().writeCollapsed(new PrintStream(bytes, true, "UTF-8"));
+
+        assertEquals("main 90\nmain;0x208 6\nmain;0x208;0x20E 4\n", bytes.toString("UTF-8").replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    void recordingDoesNotAllocate() throws Exception
+    {
+        Machine machine = loadTracedMachine();
+        //Keep calling by jumping back to the start instead of halting
+        machine.getMemory().setMemoryAtAddress((short) 0x205, (byte) 0x00);
+        machine.runCycles(200_000);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        machine.runCycles(1_000_000);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(allocated < 1024, allocated + " bytes allocated");
+        assertEquals(0, machine.getCallGraph().getDroppedCalls());
+    }
+}
@@ -0,0 +1,32 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Chip8Tests {
+
+    //Draws the 0 font sprite then loops on itself
+    private static final byte[] ROM = new byte[]{ (byte)0xA0, 0x00, (byte)0xD0, 0x05, 0x12, 0x04 };
+
+    @Test
+    void runsHeadless() throws InterruptedException
+    {
+        Chip8 chip8 = new Chip8(InputSource.NONE);
+        int[] presentedFrames = new int[1];
+        chip8.setFrameSink(() -> presentedFrames[0]++);
+        chip8.loadRom(ROM);
+
+        Thread loop = new Thread(chip8::emulationLoop);
+        loop.start();
+        Thread.sleep(100);
+        chip8.stop();
+        loop.join(1000);
+
+        assertFalse(loop.isAlive());
+        assertTrue(presentedFrames[0] > 0);
+        assertEquals(0x204, chip8.getRegisters().getPC());
+        assertEquals(0xF000000000000000L, chip8.getMemory().getScreenRow(0));
+    }
+}
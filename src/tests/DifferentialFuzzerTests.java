@@ -0,0 +1,44 @@
+package tests;
+
+import fuzzing.DifferentialFuzzer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifferentialFuzzerTests {
+
+    @Test
+    void fastEnginesMatchReference(@TempDir Path crashes) throws Exception
+    {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(crashes, List.of());
+
+        List<DifferentialFuzzer.Divergence> divergences = fuzzer.fuzz(0, 500, 200,
+                List.of(DifferentialFuzzer.Engine.PREDECODED, DifferentialFuzzer.Engine.BLOCKS), 2);
+
+        assertTrue(divergences.isEmpty(), divergences.isEmpty() ? "" : fuzzer.shrink(divergences.get(0)).toString());
+    }
+
+    @Test
+    void compiledBlocksMatchReference(@TempDir Path crashes) throws Exception
+    {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(crashes, List.of());
+
+        List<DifferentialFuzzer.Divergence> divergences = fuzzer.fuzz(0, 500, 200, List.of(DifferentialFuzzer.Engine.COMPILED_BLOCKS), 2);
+
+        assertTrue(divergences.isEmpty(), divergences.isEmpty() ? "" : fuzzer.shrink(divergences.get(0)).toString());
+    }
+
+    @Test
+    void recompiledMatchesReference(@TempDir Path crashes) throws Exception
+    {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(crashes, List.of());
+
+        List<DifferentialFuzzer.Divergence> divergences = fuzzer.fuzz(0, 10, 200, List.of(DifferentialFuzzer.Engine.RECOMPILED), 1);
+
+        assertTrue(divergences.isEmpty(), divergences.isEmpty() ? "" : fuzzer.shrink(divergences.get(0)).toString());
+    }
+}
@@ -0,0 +1,62 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisplayTests {
+    private static boolean isRendering()
+    {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("Display renderer"));
+    }
+
+    @Test
+    void renderThreadRunsFromStartToClose() throws Exception
+    {
+        Display display = new Display(new Memory());
+        assertFalse(isRendering());
+
+        display.start();
+        display.start();
+        assertTrue(isRendering());
+
+        display.close();
+        assertFalse(isRendering());
+        //Publishing with no render thread just leaves the frame for paintComponent
+        display.paintScreen();
+        display.close();
+    }
+
+    @Test
+    void publishedFrameIsPaintedFromTheComponent() throws Exception
+    {
+        Memory memory = new Memory();
+        Display display = new Display(memory);
+        display.setSize(display.getPreferredSize());
+        display.start();
+
+        memory.setPixelAtPosition((byte) 3, (byte) 2, true);
+        display.paintScreen();
+
+        //The render thread only fills the frame and asks for a repaint, whoever paints the component draws it
+        BufferedImage image = new BufferedImage(display.getWidth(), display.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int x = 3 * Utils.SCREEN_SCALE;
+        int y = 2 * Utils.SCREEN_SCALE;
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        do
+        {
+            Graphics graphics = image.createGraphics();
+            display.paintComponent(graphics);
+            graphics.dispose();
+        }
+        while(image.getRGB(x, y) != GuiUtils.ON_COLOR.getRGB() && System.nanoTime() < deadline);
+
+        assertEquals(GuiUtils.ON_COLOR.getRGB(), image.getRGB(x, y));
+        assertEquals(GuiUtils.OFF_COLOR.getRGB(), image.getRGB(x + Utils.SCREEN_SCALE, y));
+        display.close();
+    }
+}
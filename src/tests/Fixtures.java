@@ -0,0 +1,30 @@
+package tests;
+
+import chip8.*;
+
+import java.nio.ByteBuffer;
+
+///Roms and helpers shared by the machine level tests
+final class Fixtures {
+    //DT = V0 (0x3C), then V1 += 1 and store V0, V1 at 0x300 forever
+    static final byte[] COUNTER_ROM = new byte[]{
+            0x60, 0x3C, (byte)0xF0, 0x15, (byte)0xA3, 0x00, 0x71, 0x01, (byte)0xF1, 0x55, 0x12, 0x06 };
+
+    private Fixtures() {}
+
+    static Machine loadMachine(byte[] rom)
+    {
+        Machine machine = new Machine(InputSource.NONE);
+        machine.getCpu().setRandomSeed(0);
+        machine.loadRom(rom);
+        return machine;
+    }
+
+    ///The whole machine state as SaveState writes it, for comparing states byte for byte
+    static byte[] snapshot(Machine machine)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(SaveState.SIZE);
+        SaveState.write(machine, buffer);
+        return buffer.array();
+    }
+}
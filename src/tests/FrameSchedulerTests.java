@@ -0,0 +1,54 @@
+package tests;
+
+import chip8.FrameScheduler;
+import chip8.Registers;
+import chip8.Utils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameSchedulerTests {
+
+    @Test
+    void cyclesAddUpToFrequency()
+    {
+        FrameScheduler scheduler = new FrameScheduler(500);
+
+        int total = 0;
+        for(int frame = 0; frame < Utils.FRAME_RATE; frame++)
+        {
+            int cycles = scheduler.nextFrameCycles();
+            assertTrue(cycles == 8 || cycles == 9);
+            total += cycles;
+        }
+
+        assertEquals(500, total);
+    }
+
+    @Test
+    void deadlinesDontDrift()
+    {
+        FrameScheduler scheduler = new FrameScheduler(500);
+        long firstDeadline = scheduler.getFrameDeadline();
+
+        for(int frame = 0; frame < 3; frame++) { scheduler.waitForNextFrame(); }
+
+        assertEquals(3, scheduler.getFrameCount());
+        assertEquals(firstDeadline + 3 * Utils.NANOSECONDS_PER_SECOND / Utils.FRAME_RATE, scheduler.getFrameDeadline());
+        assertTrue(System.nanoTime() >= firstDeadline + 2 * Utils.NANOSECONDS_PER_SECOND / Utils.FRAME_RATE);
+    }
+
+    @Test
+    void timersStopAtZero()
+    {
+        Registers registers = new Registers();
+        registers.setDT((byte) 0x01);
+        registers.setST((byte) 0xFF);
+
+        registers.tickTimers();
+        registers.tickTimers();
+
+        assertEquals(0x00, registers.getDT());
+        assertEquals((byte) 0xFD, registers.getST());
+    }
+}
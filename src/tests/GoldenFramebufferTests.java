@@ -0,0 +1,190 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+///Whole program safety net, every rom in roms/programs and roms/games runs headless with scripted key presses
+///and its screen is compared at fixed frames against the values checked in under golden/framebuffers.txt.
+///After a change that is meant to alter output, regenerate the file by running this class' main.
+class GoldenFramebufferTests {
+    private static final Path GOLDEN_PATH = Paths.get("src/tests/golden/framebuffers.txt");
+    private static final String[] FOLDERS = new String[]{ "programs", "games" };
+    private static final int[] CHECKPOINTS = new int[]{ 60, 300, 600 };
+    private static final long SEED = 0;
+
+    //Start most games, move around a little and press the usual action keys
+    private static final String GAME_SCRIPT = "60+5:5,120+30:4,240+30:6,360+5:5,420+30:2,500+30:8";
+    private static final Map<String, String> SCRIPTS = new HashMap<>();
+    static
+    {
+        SCRIPTS.put("programs/Delay Timer Test [Matthew Mikolay, 2010].ch8", "20+3:2,40+3:2,60+3:2,100+3:5,400+3:8,420+3:5");
+        SCRIPTS.put("programs/Random Number Test [Matthew Mikolay, 2010].ch8", "60+3:1,120+3:1,240+3:1,400+3:1");
+        SCRIPTS.put("programs/Keypad Test [Hap, 2006].ch8", "30+10:1,100+10:5,200+10:F,400+10:A");
+    }
+
+    private static class Checkpoint {
+        final String rom;
+        final int frame;
+        final long hash;
+        final long[] rows;
+
+        Checkpoint(String rom, int frame, long hash, long[] rows)
+        {
+            this.rom = rom;
+            this.frame = frame;
+            this.hash = hash;
+            this.rows = rows;
+        }
+
+        String toLine()
+        {
+            ByteBuffer bytes = ByteBuffer.allocate(rows.length * Long.BYTES);
+            for(long row : rows) { bytes.putLong(row); }
+
+            return rom + "\t" + frame + "\t" + String.format("%016X", hash) + "\t" + Base64.getEncoder().encodeToString(bytes.array());
+        }
+
+        static Checkpoint fromLine(String line)
+        {
+            String[] fields = line.split("\t");
+            ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(fields[3]));
+            long[] rows = new long[Utils.SCREEN_HEIGHT];
+            for(int y = 0; y < rows.length; y++) { rows[y] = bytes.getLong(); }
+
+            return new Checkpoint(fields[0], Integer.parseInt(fields[1]), Long.parseUnsignedLong(fields[2], 16), rows);
+        }
+    }
+
+    private static List<String> findRoms() throws IOException
+    {
+        Path root = Paths.get(Utils.ROMS_PATH);
+        List<String> roms = new ArrayList<>();
+        for(String folder : FOLDERS)
+        {
+            for(Path rom : BatchRunner.findRoms(root.resolve(folder)))
+            {
+                roms.add(root.relativize(rom).toString().replace('\\', '/'));
+            }
+        }
+
+        return roms;
+    }
+
+    private static List<Checkpoint> record(String rom) throws Exception
+    {
+        String script = SCRIPTS.getOrDefault(rom, rom.startsWith("games/") ? GAME_SCRIPT : "");
+        ScriptedInput input = new ScriptedInput(script);
+
+        Machine machine = new Machine(input);
+        machine.getCpu().setRandomSeed(SEED);
+        machine.loadRom(rom);
+
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for(int checkpoint : CHECKPOINTS)
+        {
+            while(machine.getFrameCount() < checkpoint)
+            {
+                input.setFrame(machine.getFrameCount());
+                machine.runFrame();
+            }
+
+            long[] rows = new long[Utils.SCREEN_HEIGHT];
+            machine.getMemory().copyScreenRows(rows);
+            checkpoints.add(new Checkpoint(rom, checkpoint, machine.getMemory().hashScreen(), rows));
+        }
+
+        return checkpoints;
+    }
+
+    //Side by side expected and actual screens, # on in both, - only expected, + only actual
+    private static String diffImage(Checkpoint expected, Checkpoint actual)
+    {
+        StringBuilder image = new StringBuilder();
+        image.append(String.format("%s at frame %d, expected %016X got %016X%n", actual.rom, actual.frame, expected.hash, actual.hash));
+
+        for(int y = 0; y < Utils.SCREEN_HEIGHT; y++)
+        {
+            for(int x = 0; x < Utils.SCREEN_WIDTH; x++)
+            {
+                boolean was = (expected.rows[y] << x) < 0;
+                boolean is = (actual.rows[y] << x) < 0;
+                image.append(was && is ? '#' : was ? '-' : is ? '+' : '.');
+            }
+            image.append('\n');
+        }
+
+        return image.toString();
+    }
+
+    private static String check(String rom, List<Checkpoint> golden)
+    {
+        try
+        {
+            List<Checkpoint> actual = record(rom);
+            for(int i = 0; i < golden.size(); i++)
+            {
+                if(golden.get(i).hash != actual.get(i).hash) { return diffImage(golden.get(i), actual.get(i)); }
+            }
+
+            return null;
+        }
+        catch(Exception e)
+        {
+            return rom + " threw " + e;
+        }
+    }
+
+    @Test
+    void matchesGoldenFramebuffers() throws IOException
+    {
+        Map<String, List<Checkpoint>> golden = new LinkedHashMap<>();
+        for(String line : Files.readAllLines(GOLDEN_PATH, StandardCharsets.UTF_8))
+        {
+            if(line.isEmpty() || line.startsWith("#")) { continue; }
+
+            Checkpoint checkpoint = Checkpoint.fromLine(line);
+            golden.computeIfAbsent(checkpoint.rom, rom -> new ArrayList<>()).add(checkpoint);
+        }
+
+        assertEquals(findRoms(), new ArrayList<>(golden.keySet()), "Roms changed, regenerate " + GOLDEN_PATH);
+
+        List<String> failures = golden.entrySet().parallelStream()
+                .map(entry -> check(entry.getKey(), entry.getValue()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        assertTrue(failures.isEmpty(), failures.size() + " roms differ from the golden framebuffers\n" + String.join("\n", failures));
+    }
+
+    ///Rewrites the golden file from the current emulator
+    public static void main(String[] args) throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("# rom\tframe\tscreen hash\tscreen rows, generated by GoldenFramebufferTests.main");
+
+        List<List<Checkpoint>> recorded = findRoms().parallelStream().map(rom -> {
+            try { return record(rom); }
+            catch(Exception e) { throw new IllegalStateException(rom, e); }
+        }).collect(Collectors.toList());
+
+        for(List<Checkpoint> checkpoints : recorded)
+        {
+            for(Checkpoint checkpoint : checkpoints) { lines.add(checkpoint.toLine()); }
+        }
+
+        Files.createDirectories(GOLDEN_PATH.getParent());
+        Files.write(GOLDEN_PATH, lines, StandardCharsets.UTF_8);
+        System.out.println("Wrote " + (lines.size() - 1) + " checkpoints to " + GOLDEN_PATH);
+    }
+}
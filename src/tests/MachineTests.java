@@ -0,0 +1,233 @@
+package tests;
+
+import chip8.*;
+import exceptions.UnknownOpcodeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.Fixtures.*;
+
+class MachineTests {
+    @Test
+    void runFrameTicksTimersOnce() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+
+        for(int frame = 0; frame < Utils.FRAME_RATE; frame++) { machine.runFrame(); }
+
+        assertEquals(Utils.FRAME_RATE, machine.getFrameCount());
+        assertTrue(Math.abs(machine.getCycleCount() - Utils.CPU_FREQUENCY) <= 1);
+        //Set during the first frame, then ticked at the end of every frame
+        assertEquals(0, machine.getRegisters().getDT());
+    }
+
+    @Test
+    void runCyclesCrossesFrames() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+
+        machine.runCycles(3);
+        assertEquals(0, machine.getFrameCount());
+        assertEquals(0x3C, machine.getRegisters().getDT() & 0xFF);
+
+        machine.runCycles(Utils.CPU_FREQUENCY / Utils.FRAME_RATE);
+        assertEquals(1, machine.getFrameCount());
+        assertEquals(0x3B, machine.getRegisters().getDT() & 0xFF);
+    }
+
+    @Test
+    void runUntilPcReached() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+
+        assertTrue(machine.runUntil(Machine.pcReached(0x208), 100));
+        assertEquals(0x208, machine.getRegisters().getPC());
+        assertEquals(4, machine.getCycleCount());
+    }
+
+    @Test
+    void runUntilMemoryChanged() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+
+        assertTrue(machine.runUntil(Machine.memoryChanged(0x301), 100));
+        assertEquals(0x01, machine.getMemory().getMemoryAtAddress((short) 0x301));
+        assertEquals(5, machine.getCycleCount());
+    }
+
+    @Test
+    void memoryChangedComparesAgainstEachRunsStart() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        Predicate<Machine> changed = Machine.memoryChanged(0x301);
+
+        assertTrue(machine.runUntil(changed, 100));
+        assertEquals(5, machine.getCycleCount());
+        //Holds against the first run's value right away, has to wait for the next store against its own
+        assertTrue(machine.runUntil(changed, 100));
+        assertEquals(8, machine.getCycleCount());
+        assertEquals(0x02, machine.getMemory().getMemoryAtAddress((short) 0x301));
+    }
+
+    @Test
+    void runUntilGivesUp() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+
+        assertFalse(machine.runUntil(Machine.pcReached(0x400), 50));
+        assertEquals(50, machine.getCycleCount());
+
+        assertTrue(machine.runUntil(Machine.framesRun(8), 100));
+        assertEquals(8, machine.getFrameCount());
+    }
+
+    @Test
+    void runUntilStopsAtBreakpoints() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        machine.getBreakpoints().addBreakpoint(0x206);
+
+        assertFalse(machine.runUntil(Machine.pcReached(0x20A), 100));
+        assertEquals(0x206, machine.getRegisters().getPC());
+        assertNotNull(machine.getBreakReason());
+
+        //Resuming runs the instruction the break stopped at
+        assertTrue(machine.runUntil(Machine.pcReached(0x20A), 100));
+        assertNull(machine.getBreakReason());
+    }
+
+    @Test
+    void runUntilIsProfiled() throws UnknownOpcodeException
+    {
+        Machine machine = loadMachine(COUNTER_ROM);
+        machine.getProfiler().setEnabled(true);
+
+        assertTrue(machine.runUntil(Machine.pcReached(0x208), 100));
+        assertEquals(4, machine.getProfiler().getInstructionCount());
+    }
+
+    //Timers only follow the emulated instruction count, so how the run is cut up can't change what the rom sees
+    @Test
+    void timersAreIndependentOfHowCyclesAreRun() throws Exception
+    {
+        int[] chunks = new int[]{ 1, 7, 0 };
+        int[] checksums = new int[chunks.length];
+
+        for(int i = 0; i < chunks.length; i++)
+        {
+            //Keys follow the machine's own frame count rather than the caller's loop
+            ScriptedInput script = new ScriptedInput("20+3:2,40+3:2,100+3:5,400+3:8,420+3:5");
+            Machine[] running = new Machine[1];
+            InputSource keys = new InputSource()
+            {
+                @Override
+                public int getCurrentKeyPressed()
+                {
+                    script.setFrame(running[0].getFrameCount());
+                    return script.getCurrentKeyPressed();
+                }
+
+                @Override
+                public int waitForKeyPress() { return getCurrentKeyPressed(); }
+            };
+
+            Machine machine = new Machine(keys);
+            running[0] = machine;
+            machine.getCpu().setRandomSeed(0);
+            machine.loadRom("programs/Delay Timer Test [Matthew Mikolay, 2010].ch8");
+
+            while(machine.getFrameCount() < 590)
+            {
+                if(chunks[i] == 0) { machine.runFrame(); }
+                else { machine.runCycles(chunks[i]); }
+            }
+            //Stop right at the end of a frame whatever the chunk size
+            assertTrue(machine.runUntil(Machine.framesRun(600), Long.MAX_VALUE));
+
+            checksums[i] = SaveState.checksum(machine);
+        }
+
+        assertEquals(checksums[0], checksums[1]);
+        assertEquals(checksums[0], checksums[2]);
+    }
+
+    //V0 = 1, V1 = 2, I = 0xFFF, then FX65 reads past the end of memory
+    private static final byte[] FAULTING_ROM = new byte[]{ 0x60, 0x01, 0x61, 0x02, (byte)0xAF, (byte)0xFF, (byte)0xFF, 0x65 };
+    //Same with an instruction in between, so no superinstruction covers the faulting one
+    private static final byte[] FAULTING_UNFUSED_ROM = new byte[]{
+            0x60, 0x01, 0x61, 0x02, (byte)0xAF, (byte)0xFF, 0x72, 0x01, (byte)0xFF, 0x65 };
+
+    private static long faultingCycles(byte[] rom, boolean stepping, Path recompilerCache)
+    {
+        Machine machine = new Machine(InputSource.NONE);
+        machine.setRecompilerCache(recompilerCache);
+        machine.loadRom(rom);
+
+        assertThrows(RuntimeException.class, () -> {
+            if(stepping) { while(true) { machine.step(); } }
+            machine.runFrame();
+        });
+
+        return machine.getCycleCount();
+    }
+
+    //Instructions before the faulting one changed the machine, they have to count or cycle indices drift from stepping
+    @Test
+    void faultCountsTheInstructionsBeforeIt(@TempDir Path cache) throws IOException
+    {
+
+        assertEquals(3, faultingCycles(FAULTING_ROM, true, null));
+        assertEquals(3, faultingCycles(FAULTING_ROM, false, null));
+        assertEquals(3, faultingCycles(FAULTING_ROM, false, cache));
+        assertEquals(4, faultingCycles(FAULTING_UNFUSED_ROM, true, null));
+        assertEquals(4, faultingCycles(FAULTING_UNFUSED_ROM, false, null));
+        assertEquals(4, faultingCycles(FAULTING_UNFUSED_ROM, false, cache));
+    }
+
+    @Test
+    void recompilesIntoTheGivenCache(@TempDir Path cache) throws Exception
+    {
+        //Compiled by no other test, a class already loaded in this JVM isn't written again
+        byte[] rom = new byte[]{ 0x65, 0x0B, 0x12, 0x02 };
+
+        Machine machine = new Machine(InputSource.NONE);
+        machine.setRecompilerCache(cache);
+        machine.loadRom(rom);
+
+        assertTrue(Files.exists(RomRecompiler.getCachedClassPath(rom, cache)));
+    }
+
+    @Test
+    void reloadingRunsLikeAFreshMachine(@TempDir Path cache) throws Exception
+    {
+        byte[] shorter = new byte[]{ 0x60, 0x05, 0x70, 0x01, 0x12, 0x02 };
+
+        Machine reloaded = new Machine(InputSource.NONE);
+        reloaded.getCpu().setRandomSeed(0);
+        reloaded.setRecompilerCache(cache);
+        reloaded.loadRom(COUNTER_ROM);
+        reloaded.runCycles(1000);
+        reloaded.loadRom(shorter);
+
+        assertEquals(0, reloaded.getCycleCount());
+        assertEquals(0, reloaded.getFrameCount());
+        //Nothing left of the longer rom after the new one
+        assertEquals(0, reloaded.getMemory().getMemoryAtAddress((short) 0x206));
+        assertEquals(0, reloaded.getMemory().getMemoryAtAddress((short) 0x301));
+
+        Machine fresh = new Machine(InputSource.NONE);
+        fresh.getCpu().setRandomSeed(0);
+        fresh.setRecompilerCache(cache);
+        fresh.loadRom(shorter);
+
+        reloaded.runCycles(1000);
+        fresh.runCycles(1000);
+        assertEquals(SaveState.checksum(fresh), SaveState.checksum(reloaded));
+    }
+}
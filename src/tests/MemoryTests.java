@@ -43,4 +43,43 @@ class MemoryTests {
             //All good
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void xorScreenRow()
+    {
+        assertFalse(memory.xorScreenRow(3, 0xF000000000000000L));
+        assertTrue(memory.getPixelAtPosition((byte)0, (byte)3));
+        assertTrue(memory.getPixelAtPosition((byte)3, (byte)3));
+        assertFalse(memory.getPixelAtPosition((byte)4, (byte)3));
+
+        //Turning a pixel off is a collision
+        assertTrue(memory.xorScreenRow(3, 0x1000000000000000L));
+        assertEquals(0xE000000000000000L, memory.getScreenRow(3));
+    }
+
+    @Test
+    void clearScreen()
+    {
+        memory.setPixelAtPosition((byte)63, (byte)31, true);
+        memory.clearScreen();
+
+        assertEquals(0L, memory.getScreenRow(31));
+    }
+
+    @Test
+    void dirtyRegion()
+    {
+        memory.clearDirtyRegion();
+        memory.xorScreenRow(4, 0x0F00000000000000L);
+        memory.setPixelAtPosition((byte)20, (byte)9, true);
+
+        assertEquals((1 << 4) | (1 << 9), memory.getDirtyRows());
+        assertEquals(0x0F00000000000000L | (Long.MIN_VALUE >>> 20), memory.getDirtyColumns());
+
+        //Setting a pixel to the state it already has changes nothing
+        memory.clearDirtyRegion();
+        memory.setPixelAtPosition((byte)20, (byte)9, true);
+
+        assertEquals(0, memory.getDirtyRows());
+    }
+}
@@ -0,0 +1,63 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieTests {
+    private static final String ROM = "games/Brix [Andreas Gustafsson, 1990].ch8";
+
+    private static Movie record(byte[] rom, int frames, int steps) throws Exception
+    {
+        ScriptedInput keys = new ScriptedInput("20+40:4,100+15:6,150+60:4,300+20:6");
+        MovieRecorder recorder = new MovieRecorder(keys, 1234, rom);
+
+        Machine machine = new Machine(recorder);
+        recorder.start(machine);
+        machine.loadRom(rom);
+
+        while(machine.getFrameCount() < frames)
+        {
+            keys.setFrame(machine.getFrameCount());
+            machine.runFrame();
+        }
+        //Like a session ended in step mode
+        for(int i = 0; i < steps; i++) { machine.step(); }
+
+        return recorder.finish(machine);
+    }
+
+    @Test
+    void replayReproducesTheSession() throws Exception
+    {
+        byte[] rom = Files.readAllBytes(Paths.get(Utils.ROMS_PATH + ROM));
+        Movie movie = record(rom, 400, 3);
+        assertTrue(movie.getChangeCount() > 0);
+
+        Path file = Files.createTempFile("chip8", ".c8m");
+        movie.write(file);
+        Movie loaded = Movie.read(file);
+        Files.delete(file);
+
+        assertEquals(movie.getChangeCount(), loaded.getChangeCount());
+        Machine replayed = MoviePlayer.replay(loaded, rom);
+        assertEquals(movie.getEndCycle(), replayed.getCycleCount());
+        assertTrue(MoviePlayer.matches(loaded, replayed));
+    }
+
+    @Test
+    void replayNeedsTheRecordedRom() throws Exception
+    {
+        byte[] rom = Files.readAllBytes(Paths.get(Utils.ROMS_PATH + ROM));
+        Movie movie = record(rom, 10, 0);
+
+        byte[] otherRom = rom.clone();
+        otherRom[0] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> MoviePlayer.replay(movie, otherRom));
+    }
+}
@@ -0,0 +1,102 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfilerTests {
+    //V0 = 0, then V0 += 1 until it is 10, then jump to itself
+    private static final byte[] ROM = new byte[]{
+            0x60, 0x00, 0x70, 0x01, 0x30, 0x0A, 0x12, 0x02, 0x12, 0x08 };
+
+    private static Machine loadMachine(boolean profiling)
+    {
+        Machine machine = Fixtures.loadMachine(ROM);
+        machine.getProfiler().setEnabled(profiling);
+        return machine;
+    }
+
+    @Test
+    void countsAddressesFamiliesAndPairs() throws Exception
+    {
+        Machine machine = loadMachine(true);
+        machine.runCycles(200);
+
+        Profiler profiler = machine.getProfiler();
+        assertEquals(200, profiler.getInstructionCount());
+        assertEquals(1, profiler.getExecutions(0x200));
+        assertEquals(10, profiler.getExecutions(0x202));
+        assertEquals(9, profiler.getExecutions(0x206));
+        assertEquals(170, profiler.getExecutions(0x208));
+
+        assertEquals(10, profiler.getFamilyExecutions(DecodedInstruction.ADD_BYTE));
+        assertEquals(179, profiler.getFamilyExecutions(DecodedInstruction.JUMP));
+
+        assertEquals(1, profiler.getPairExecutions(DecodedInstruction.LOAD_BYTE, DecodedInstruction.ADD_BYTE));
+        assertEquals(10, profiler.getPairExecutions(DecodedInstruction.ADD_BYTE, DecodedInstruction.SKIP_EQUAL_BYTE));
+        //The skip taken on the last round and the jumps back don't fall through
+        assertEquals(9, profiler.getPairExecutions(DecodedInstruction.SKIP_EQUAL_BYTE, DecodedInstruction.JUMP));
+        assertEquals(0, profiler.getPairExecutions(DecodedInstruction.JUMP, DecodedInstruction.ADD_BYTE));
+    }
+
+    @Test
+    void findsHotLoops() throws Exception
+    {
+        Machine machine = loadMachine(true);
+        machine.runCycles(200);
+
+        Profiler profiler = machine.getProfiler();
+        assertEquals(9, profiler.getLoopIterations(0x206));
+        assertEquals(170, profiler.getLoopIterations(0x208));
+
+        String[] loops = profiler.getHotLoops();
+        assertEquals(2, loops.length);
+        assertTrue(loops[0].startsWith("0x208-0x208"), loops[0]);
+        assertTrue(loops[1].startsWith("0x202-0x206"), loops[1]);
+    }
+
+    @Test
+    void profilingDoesNotChangeTheRun() throws Exception
+    {
+        Machine profiled = loadMachine(true);
+        Machine plain = loadMachine(false);
+        profiled.runCycles(1000);
+        plain.runCycles(1000);
+
+        assertEquals(plain.getRegisters().getPC(), profiled.getRegisters().getPC());
+        assertEquals(plain.getRegisters().getVAtAddress(0), profiled.getRegisters().getVAtAddress(0));
+        assertEquals(plain.getFrameCount(), profiled.getFrameCount());
+        assertEquals(0, plain.getProfiler().getInstructionCount());
+    }
+
+    @Test
+    void dumpsAndRegistersOverJmx() throws Exception
+    {
+        Machine machine = loadMachine(true);
+        machine.runCycles(200);
+        Profiler profiler = machine.getProfiler();
+
+        Path report = Files.createTempFile("chip8-profile", ".txt");
+        profiler.dump(report);
+        String text = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        Files.delete(report);
+
+        assertTrue(text.contains("# Opcode families"));
+        assertTrue(text.contains("7XKK ADD"));
+
+        profiler.register();
+        ObjectName name = new ObjectName(Profiler.OBJECT_NAME);
+        assertEquals(200L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "InstructionCount"));
+
+        ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(0, profiler.getInstructionCount());
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+}
@@ -0,0 +1,113 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.Fixtures.*;
+
+class ReverseDebuggerTests {
+    @Test
+    void seekingBackMatchesTheOriginalRun() throws Exception
+    {
+        ScriptedInput keys = new ScriptedInput("60+5:5,120+30:4,240+30:6,360+5:5");
+        ReverseDebugger debugger = new ReverseDebugger(keys);
+        Machine machine = new Machine(debugger);
+        machine.getCpu().setRandomSeed(0);
+        machine.loadRom("games/Pong (1 player).ch8");
+        debugger.reset(machine);
+
+        byte[][] states = new byte[500][];
+        long[] cycles = new long[500];
+        for(int frame = 0; frame < 500; frame++)
+        {
+            keys.setFrame(machine.getFrameCount());
+            machine.runFrame();
+            debugger.onFrame();
+            states[frame] = snapshot(machine);
+            cycles[frame] = machine.getCycleCount();
+        }
+
+        //The real input moved on, everything behind has to come from the log
+        keys.setFrame(0);
+        for(int frame : new int[]{ 450, 300, 130, 61, 0 })
+        {
+            debugger.seek(cycles[frame]);
+            assertArrayEquals(states[frame], snapshot(machine));
+        }
+
+        debugger.seek(cycles[499]);
+        assertTrue(debugger.stepBack());
+        assertEquals(cycles[499] - 1, machine.getCycleCount());
+        machine.runCycles(1);
+        assertArrayEquals(states[499], snapshot(machine));
+    }
+
+    @Test
+    void runsBackToTheLastWrite() throws Exception
+    {
+        ReverseDebugger debugger = new ReverseDebugger(InputSource.NONE);
+        Machine machine = new Machine(debugger);
+        machine.loadRom(COUNTER_ROM);
+        debugger.reset(machine);
+
+        machine.runCycles(1000);
+        byte counter = machine.getMemory().getMemoryAtAddress((short) 0x301);
+
+        assertTrue(debugger.runBackToWrite(0x301));
+        assertEquals(0x208, machine.getRegisters().getPC());
+        assertEquals(counter - 1, machine.getMemory().getMemoryAtAddress((short) 0x301));
+
+        //Never written, the machine stays put
+        long cycle = machine.getCycleCount();
+        assertFalse(debugger.runBackToWrite(0x400));
+        assertEquals(cycle, machine.getCycleCount());
+    }
+
+    //Counts V0, V1 and V2 up in nested loops for about 5.9 million instructions, stores 0x55 at 0x300 from 0x21C, then halts
+    private static final byte[] LATE_WRITE_ROM = new byte[]{
+            0x60, 0x00, 0x61, 0x00, 0x62, 0x00,
+            0x70, 0x01, 0x30, 0x00, 0x12, 0x06,
+            0x71, 0x01, 0x31, 0x00, 0x12, 0x06,
+            0x72, 0x01, 0x32, 0x1E, 0x12, 0x06,
+            (byte)0xA3, 0x00, 0x60, 0x55, (byte)0xF0, 0x55, 0x12, 0x1E };
+
+    @Test
+    void checkpointsStayBoundedOnLongRuns() throws Exception
+    {
+        ReverseDebugger debugger = new ReverseDebugger(InputSource.NONE);
+        Machine machine = new Machine(debugger);
+        machine.loadRom(LATE_WRITE_ROM);
+        debugger.reset(machine);
+
+        long writtenAfter = -1;
+        long writtenBefore = -1;
+        while(machine.getCycleCount() < 20_000_000)
+        {
+            long frameStart = machine.getCycleCount();
+            machine.runFrame();
+            debugger.onFrame();
+
+            if(writtenBefore == -1 && machine.getMemory().getMemoryAtAddress((short) 0x300) != 0)
+            {
+                writtenAfter = frameStart;
+                writtenBefore = machine.getCycleCount();
+            }
+        }
+
+        assertTrue(debugger.getCheckpointCount() <= ReverseDebugger.CHECKPOINT_CAPACITY);
+        assertTrue(debugger.getCheckpointInterval() > ReverseDebugger.FIRST_CHECKPOINT_INTERVAL);
+        //Written before the history got thinned, the search has to go back through the halved checkpoints
+        assertTrue(writtenBefore < ReverseDebugger.CHECKPOINT_CAPACITY * ReverseDebugger.FIRST_CHECKPOINT_INTERVAL);
+
+        assertTrue(debugger.runBackToWrite(0x300));
+        assertTrue(machine.getCycleCount() >= writtenAfter && machine.getCycleCount() < writtenBefore);
+        assertEquals(0x21C, machine.getRegisters().getPC());
+        assertEquals(0, machine.getMemory().getMemoryAtAddress((short) 0x300));
+        machine.runCycles(1);
+        assertEquals(0x55, machine.getMemory().getMemoryAtAddress((short) 0x300));
+
+        debugger.seek(12_345_678);
+        assertEquals(12_345_678, machine.getCycleCount());
+    }
+}
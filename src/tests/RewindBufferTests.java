@@ -0,0 +1,89 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.Fixtures.*;
+
+class RewindBufferTests {
+    private static final String ROM = "games/Pong (1 player).ch8";
+
+    private static Machine loadMachine() throws Exception
+    {
+        Machine machine = new Machine(new ScriptedInput("30+60:1,200+60:4"));
+        machine.getCpu().setRandomSeed(0);
+        machine.loadRom(ROM);
+        return machine;
+    }
+
+    //Records every frame and keeps a full copy of each state to check the rewinds against
+    private static List<byte[]> recordFrames(Machine machine, RewindBuffer rewind, int frames) throws Exception
+    {
+        List<byte[]> states = new ArrayList<>();
+        for(int frame = 0; frame < frames; frame++)
+        {
+            machine.runFrame();
+            rewind.record(machine);
+            states.add(snapshot(machine));
+        }
+
+        return states;
+    }
+
+    @Test
+    void rewindsThroughEveryRecordedFrame() throws Exception
+    {
+        Machine machine = loadMachine();
+        RewindBuffer rewind = new RewindBuffer();
+        List<byte[]> states = recordFrames(machine, rewind, 300);
+
+        for(int frame = states.size() - 2; frame >= 0; frame--)
+        {
+            assertTrue(rewind.rewind(machine));
+            assertArrayEquals(states.get(frame), snapshot(machine));
+        }
+
+        assertFalse(rewind.rewind(machine));
+        assertEquals(0, rewind.getUsedBytes());
+    }
+
+    @Test
+    void evictsOldestFramesWithinBudget() throws Exception
+    {
+        Machine machine = loadMachine();
+        RewindBuffer rewind = new RewindBuffer(50, 4096);
+        List<byte[]> states = recordFrames(machine, rewind, 400);
+
+        assertTrue(rewind.getFrameCount() <= 50);
+        assertTrue(rewind.getUsedBytes() <= 4096);
+
+        int frames = rewind.getFrameCount();
+        for(int i = 1; i <= frames; i++) { assertTrue(rewind.rewind(machine)); }
+        assertArrayEquals(states.get(states.size() - 1 - frames), snapshot(machine));
+
+        //Recording carries on from the rewound state
+        machine.runFrame();
+        rewind.record(machine);
+        assertTrue(rewind.rewind(machine));
+        assertArrayEquals(states.get(states.size() - 1 - frames), snapshot(machine));
+    }
+
+    @Test
+    void minuteOfHistoryFitsInAFewHundredKilobytes() throws Exception
+    {
+        Machine machine = loadMachine();
+        RewindBuffer rewind = new RewindBuffer();
+        for(int frame = 0; frame < 60 * Utils.FRAME_RATE; frame++)
+        {
+            machine.runFrame();
+            rewind.record(machine);
+        }
+
+        assertEquals(60 * Utils.FRAME_RATE - 1, rewind.getFrameCount());
+        assertTrue(rewind.getUsedBytes() < 512 * 1024, rewind.getUsedBytes() + " bytes");
+    }
+}
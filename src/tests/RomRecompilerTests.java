@@ -0,0 +1,106 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RomRecompilerTests {
+
+    Memory memory = new Memory();
+    Registers registers = new Registers();
+    Keyboard keyboard = new Keyboard();
+    CPU cpu = new CPU(memory, registers, keyboard);
+
+    //V1 = 5, V2 = 3, V1 += V2, I = V1 as BCD at 0x300, then loop on itself
+    private static final byte[] ROM = new byte[]{
+            0x61, 0x05, 0x62, 0x03, (byte)0x81, 0x24, (byte)0xA3, 0x00, (byte)0xF1, 0x33, 0x12, 0x0A };
+
+    private RecompiledRom loadRom(Path cache)
+    {
+        for(int i = 0; i < ROM.length; i++)
+        {
+            memory.setMemoryAtAddress((short)(Utils.FIRST_PROGRAM_SPACE_ADDRESS + i), ROM[i]);
+        }
+
+        RecompiledRom recompiledRom = RomRecompiler.load(ROM, cache);
+        assertNotNull(recompiledRom);
+        recompiledRom.attach(cpu, memory, registers);
+
+        return recompiledRom;
+    }
+
+    @Test
+    void runRecompiledRom(@TempDir Path cache) throws IOException
+    {
+        RecompiledRom recompiledRom = loadRom(cache);
+
+        int retired = recompiledRom.run(6);
+
+        assertEquals(6, retired);
+        assertEquals(0x08, registers.getVAtAddress(0x1));
+        assertEquals(0x08, memory.getMemoryAtAddress((short) 0x302));
+        assertEquals(0x20A, registers.getPC());
+    }
+
+    @Test
+    void stopsOnBudget(@TempDir Path cache) throws IOException
+    {
+        RecompiledRom recompiledRom = loadRom(cache);
+
+        int retired = recompiledRom.run(2);
+
+        assertEquals(2, retired);
+        assertEquals(0x204, registers.getPC());
+    }
+
+    //Launchers and embedding applications load the emulator from somewhere java.class.path doesn't list
+    @Test
+    void compilesWithoutTheEmulatorOnTheClassPath(@TempDir Path cache) throws IOException
+    {
+        //Not compiled by the other tests, so javac has to run here
+        byte[] rom = new byte[]{ 0x63, 0x07, 0x12, 0x02 };
+
+        String classPath = System.getProperty("java.class.path");
+        System.setProperty("java.class.path", "");
+        try
+        {
+            assertNotNull(RomRecompiler.load(rom, cache));
+        }
+        finally
+        {
+            System.setProperty("java.class.path", classPath);
+        }
+    }
+
+    //Neither a stale nor an edited class gets defined, the rom is compiled again
+    @Test
+    void recompilesOverUnverifiedCachedClass(@TempDir Path cache) throws Exception
+    {
+        byte[] rom = new byte[]{ 0x64, 0x09, 0x12, 0x02 };
+        byte[] tampered = new byte[]{ (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0x00 };
+
+        Path cachedClass = RomRecompiler.getCachedClassPath(rom, cache);
+        Files.write(cachedClass, tampered);
+
+        assertNotNull(RomRecompiler.load(rom, cache));
+        assertFalse(Arrays.equals(tampered, Files.readAllBytes(cachedClass)));
+    }
+
+    @Test
+    void codeWriteFallsBackToInterpreter(@TempDir Path cache) throws IOException
+    {
+        RecompiledRom recompiledRom = loadRom(cache);
+
+        memory.setMemoryAtAddress((short) 0x203, (byte) 0x04);
+
+        assertFalse(recompiledRom.isValid());
+        assertEquals(0, recompiledRom.run(6));
+    }
+}
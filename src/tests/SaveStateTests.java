@@ -0,0 +1,69 @@
+package tests;
+
+import chip8.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveStateTests {
+    private static final String ROM = "games/Pong (1 player).ch8";
+
+    private static Machine loadMachine(long seed) throws IOException
+    {
+        Machine machine = new Machine(InputSource.NONE);
+        machine.getCpu().setRandomSeed(seed);
+        machine.loadRom(ROM);
+        return machine;
+    }
+
+    private static void runFrames(Machine machine, int frames) throws Exception
+    {
+        for(int i = 0; i < frames; i++) { machine.runFrame(); }
+    }
+
+    @Test
+    void restoredMachineCarriesOnIdentically() throws Exception
+    {
+        Machine original = loadMachine(1);
+        runFrames(original, 100);
+
+        Path file = Files.createTempFile("chip8", ".state");
+        SaveState.save(original, file);
+        runFrames(original, 200);
+
+        //Different seed, the generator state has to come from the file
+        Machine restored = loadMachine(2);
+        SaveState.load(restored, file);
+        assertEquals(100, restored.getFrameCount());
+        runFrames(restored, 200);
+
+        assertEquals(original.getMemory().hashScreen(), restored.getMemory().hashScreen());
+        assertEquals(original.getCycleCount(), restored.getCycleCount());
+        assertEquals(original.getRegisters().getPC(), restored.getRegisters().getPC());
+        for(int i = 0; i < 16; i++) { assertEquals(original.getRegisters().getVAtAddress(i), restored.getRegisters().getVAtAddress(i)); }
+
+        Files.delete(file);
+    }
+
+    @Test
+    void corruptStateIsRejected() throws Exception
+    {
+        Machine machine = loadMachine(1);
+        runFrames(machine, 10);
+
+        ByteBuffer buffer = ByteBuffer.allocate(SaveState.SIZE);
+        SaveState.write(machine, buffer);
+        buffer.put(100, (byte)(buffer.get(100) ^ 1));
+        buffer.flip();
+
+        Machine target = loadMachine(1);
+        short PC = target.getRegisters().getPC();
+        assertThrows(IOException.class, () -> SaveState.read(target, buffer));
+        assertEquals(PC, target.getRegisters().getPC());
+    }
+}
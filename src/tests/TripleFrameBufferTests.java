@@ -0,0 +1,51 @@
+package tests;
+
+import chip8.Memory;
+import chip8.TripleFrameBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TripleFrameBufferTests {
+
+    private Memory memory = new Memory();
+    private TripleFrameBuffer frames = new TripleFrameBuffer();
+
+    @Test
+    void nothingPublished()
+    {
+        assertNull(frames.acquire());
+    }
+
+    @Test
+    void acquireNewestFrame()
+    {
+        memory.setScreenRow(0, 0x1L);
+        frames.publish(memory);
+        memory.setScreenRow(0, 0x2L);
+        frames.publish(memory);
+
+        long[] rows = frames.acquire();
+
+        assertEquals(0x2L, rows[0]);
+        assertEquals(1, frames.getDroppedFrames());
+        assertNull(frames.acquire());
+    }
+
+    @Test
+    void acquiredFrameIsNotOverwritten()
+    {
+        memory.setScreenRow(5, 0xAL);
+        frames.publish(memory);
+        long[] rows = frames.acquire();
+
+        //Two more frames fill both the back and middle buffers
+        memory.setScreenRow(5, 0xBL);
+        frames.publish(memory);
+        memory.setScreenRow(5, 0xCL);
+        frames.publish(memory);
+
+        assertEquals(0xAL, rows[5]);
+        assertEquals(0xCL, frames.acquire()[5]);
+    }
+}